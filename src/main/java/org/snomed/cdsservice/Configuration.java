@@ -1,8 +1,16 @@
 package org.snomed.cdsservice;
 
 import ca.uhn.fhir.context.FhirContext;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 @org.springframework.context.annotation.Configuration
 public class Configuration {
 
@@ -11,4 +19,22 @@ public class Configuration {
 		return FhirContext.forR4();
 	}
 
+	/**
+	 * Runs the stages of a CDS request that may block on the terminology server.
+	 * When all threads are busy and the queue is full the stage runs on the request thread, so requests slow down rather than fail.
+	 */
+	@Bean(destroyMethod = "shutdown")
+	public ExecutorService cdsStageExecutor(@Value("${cds.stage-executor.threads:16}") int threads, @Value("${cds.stage-executor.queue-size:256}") int queueSize) {
+		AtomicInteger threadNumber = new AtomicInteger();
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, "cds-stage-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), threadFactory,
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
 }
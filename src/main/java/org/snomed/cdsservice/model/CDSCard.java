@@ -77,10 +77,6 @@ public class CDSCard {
 		this.referenceConditions = referenceConditions;
 	}
 
-	public CDSCard cloneCard() {
-		return new CDSCard(uuid, summary, detail, indicator, source, referenceMedications, referenceConditions, alertType);
-	}
-
 	public String getAlertType() {
 		return alertType;
 	}
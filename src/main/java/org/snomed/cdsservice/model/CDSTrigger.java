@@ -5,7 +5,9 @@ import org.hl7.fhir.r4.model.Coding;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -13,23 +15,122 @@ import static java.lang.String.format;
 
 public abstract class CDSTrigger {
 
+	// Per trigger, a few medication and condition combinations account for most cards
+	private static final int RENDERED_CARD_CACHE_SIZE = 32;
+
 	private final String medicationLabel;
-	private final Collection<Coding> medicationCodings;
+	private final CodeSet medicationCodes;
 	private final String conditionOrMedicationLabel;
-	private final Collection<Coding> conditionOrMedicationCodings;
+	private final CodeSet conditionOrMedicationCodes;
 	private final CDSCard card;
 
-	public CDSTrigger(String medicationLabel, Collection<Coding> medicationCodings, String conditionOrMedicationLabel, Collection<Coding> conditionOrMedicationCodings, CDSCard card) {
+	// Matched codings -> rendered card, created on first use and guarded by this trigger
+	private Map<List<String>, CDSCard> renderedCards;
+
+	public CDSTrigger(String medicationLabel, CodeSet medicationCodes, String conditionOrMedicationLabel, CodeSet conditionOrMedicationCodes, CDSCard card) {
 		this.medicationLabel = medicationLabel;
-		this.medicationCodings = medicationCodings;
+		this.medicationCodes = medicationCodes;
 		this.conditionOrMedicationLabel = conditionOrMedicationLabel;
-		this.conditionOrMedicationCodings = conditionOrMedicationCodings;
+		this.conditionOrMedicationCodes = conditionOrMedicationCodes;
 		this.card = card;
 	}
 
-	abstract String processTextTemplate(String text, Collection<Coding> conditionIntersection, Collection<Coding> medicationIntersection);
+	public CDSCard createRelevantCard(Set<Coding> activeDiagnosesOrMedicationCodings, Set<Coding> draftMedicationOrderCodings) {
+		Collection<Coding> medicationIntersection = getIntersection(draftMedicationOrderCodings, medicationCodes);
+		Collection<Coding> conditionOrMedicationIntersection = getIntersection(activeDiagnosesOrMedicationCodings, conditionOrMedicationCodes);
+		return createCard(medicationIntersection, conditionOrMedicationIntersection);
+	}
+
+	/**
+	 * Creates a card instance for this trigger using codings from the request that are already known to match the trigger value sets.
+	 * Cards rendered for the same matched codings are reused from a bounded cache, each call returns a new instance that can be modified.
+	 * @param medicationIntersection draft medication codings that are members of the medication value set.
+	 * @param conditionOrMedicationIntersection condition or draft medication codings that are members of the second value set.
+	 * @return the card, or null if either intersection is empty.
+	 */
+	public CDSCard createCard(Collection<Coding> medicationIntersection, Collection<Coding> conditionOrMedicationIntersection) {
+		if (medicationIntersection.isEmpty() || conditionOrMedicationIntersection.isEmpty()) {
+			return null;
+		}
+		List<String> key = getRenderedCardKey(medicationIntersection, conditionOrMedicationIntersection);
+		CDSCard renderedCard;
+		synchronized (this) {
+			renderedCard = renderedCards != null ? renderedCards.get(key) : null;
+		}
+		if (renderedCard == null) {
+			renderedCard = renderCard(medicationIntersection, conditionOrMedicationIntersection);
+			if (renderedCard == null) {
+				return null;
+			}
+			synchronized (this) {
+				if (renderedCards == null) {
+					renderedCards = new LinkedHashMap<>(16, 0.75f, true) {
+						@Override
+						protected boolean removeEldestEntry(Map.Entry<List<String>, CDSCard> eldest) {
+							return size() > RENDERED_CARD_CACHE_SIZE;
+						}
+					};
+				}
+				renderedCards.put(key, renderedCard);
+			}
+		}
+		return copyRenderedCard(renderedCard);
+	}
 
-	public abstract CDSCard createRelevantCard(Set<Coding> activeDiagnosesOrMedicationCodings, Set<Coding> draftMedicationOrderCodings);
+	/**
+	 * Renders the card text and references for the matched codings. The result is cached, so it must depend on nothing else.
+	 * @return the card, or null if either intersection is empty.
+	 */
+	protected abstract CDSCard renderCard(Collection<Coding> medicationIntersection, Collection<Coding> conditionOrMedicationIntersection);
+
+	// The card text depends on the display of each coding as well as the code
+	private static List<String> getRenderedCardKey(Collection<Coding> medicationIntersection, Collection<Coding> conditionOrMedicationIntersection) {
+		List<String> key = new ArrayList<>((medicationIntersection.size() + conditionOrMedicationIntersection.size()) * 3 + 1);
+		addToRenderedCardKey(medicationIntersection, key);
+		key.add(null);
+		addToRenderedCardKey(conditionOrMedicationIntersection, key);
+		return key;
+	}
+
+	private static void addToRenderedCardKey(Collection<Coding> codings, List<String> key) {
+		for (Coding coding : codings) {
+			key.add(coding.getSystem());
+			key.add(coding.getCode());
+			key.add(coding.getDisplay());
+		}
+	}
+
+	// Callers replace or change the codings of references, so the references and their coding lists are copied, codings are immutable
+	private static CDSCard copyRenderedCard(CDSCard renderedCard) {
+		return new CDSCard(renderedCard.getUuid(), renderedCard.getSummary(), renderedCard.getDetail(), renderedCard.getIndicator(), renderedCard.getSource(),
+				copyReferences(renderedCard.getReferenceMedications()), copyReferences(renderedCard.getReferenceConditions()), renderedCard.getAlertType());
+	}
+
+	private static List<CDSReference> copyReferences(List<CDSReference> references) {
+		if (references == null) {
+			return null;
+		}
+		List<CDSReference> copies = new ArrayList<>(references.size());
+		for (CDSReference reference : references) {
+			copies.add(new CDSReference(reference.getCoding() != null ? new ArrayList<>(reference.getCoding()) : null));
+		}
+		return copies;
+	}
+
+	/**
+	 * Creates a new instance of the card of this trigger with the given text.
+	 * Reference lists are copied so that each instance can be modified independently of the rule card.
+	 */
+	protected CDSCard createCardInstance(String summary, String detail) {
+		return new CDSCard(card.getUuid(), summary, detail, card.getIndicator(), card.getSource(),
+				card.getReferenceMedications() != null ? new ArrayList<>(card.getReferenceMedications()) : null,
+				card.getReferenceConditions() != null ? new ArrayList<>(card.getReferenceConditions()) : null,
+				card.getAlertType());
+	}
+
+	protected static String render(CardTextTemplate template, String first, String second) {
+		return template != null ? template.render(first, second) : null;
+	}
 
 	public void addReferenceMedicationToCDSCard(Collection<Coding> medicationIntersection, CDSCard cardInstance) {
 		List<CDSReference> cdsReferences = medicationIntersection.stream().map(coding -> new CDSCoding(coding.getSystem(), coding.getCode())).map(cdsCoding -> new CDSReference(Collections.singletonList(cdsCoding))).collect(Collectors.toList());
@@ -59,15 +160,8 @@ public abstract class CDSTrigger {
 		cardInstance.getReferenceConditions().addAll(cdsReferences.stream().filter(cdsReference -> !codes.contains(cdsReference.getCoding().get(0).getCode())).toList());
 	}
 
-	public Collection<Coding> getIntersection(Collection<Coding> codingsA, Collection<Coding> codingsB) {
-		return codingsA.stream().filter(codingA -> {
-			for (Coding codingB : codingsB) {
-				if (codingA.getSystem() != null && codingA.getSystem().equals(codingB.getSystem()) && codingA.getCode().equals(codingB.getCode())) {
-					return true;
-				}
-			}
-			return false;
-		}).collect(Collectors.toList());
+	public Collection<Coding> getIntersection(Collection<Coding> codings, CodeSet codes) {
+		return codings.stream().filter(codes::contains).collect(Collectors.toList());
 	}
 
 	public String toHumanReadable(Collection<Coding> codings) {
@@ -94,8 +188,8 @@ public abstract class CDSTrigger {
 		return medicationLabel;
 	}
 
-	public Collection<Coding> getMedicationCodings() {
-		return medicationCodings;
+	public CodeSet getMedicationCodes() {
+		return medicationCodes;
 	}
 
 	public String getMedication2Label() {
@@ -106,12 +200,12 @@ public abstract class CDSTrigger {
 		return conditionOrMedicationLabel;
 	}
 
-	public Collection<Coding> getConditionCodings() {
-		return conditionOrMedicationCodings;
+	public CodeSet getConditionCodes() {
+		return conditionOrMedicationCodes;
 	}
 
-	public Collection<Coding> getMedication2Codings() {
-		return conditionOrMedicationCodings;
+	public CodeSet getMedication2Codes() {
+		return conditionOrMedicationCodes;
 	}
 
 	public CDSCard getCard() {
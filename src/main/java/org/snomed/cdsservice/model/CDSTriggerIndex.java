@@ -0,0 +1,482 @@
+package org.snomed.cdsservice.model;
+
+import org.hl7.fhir.r4.model.Coding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.NOT_AN_SCTID;
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.isSnomedSystem;
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.parseSctid;
+
+/**
+ * Inverted index of trigger value sets, mapping each system and code to the value sets that contain it.
+ * The index is built once when the triggers are loaded so that evaluating a request only touches the value sets
+ * hit by the codes in the patient record, rather than intersecting every trigger value set.
+ * <p>
+ * The rule files repeat the same value set across many rows, so the triggers are held as a graph. Each distinct value set on a side
+ * is held once, and triggers with the same pair of value sets are grouped into one evaluation unit.
+ * Each value set is matched once per request and each matched unit fans out to the cards of all of its triggers.
+ * <p>
+ * Every code in any trigger value set is given a dense integer id. SNOMED CT codes take the ids 0 to n-1 in identifier order,
+ * codes from other systems follow. The value sets containing each code are stored contiguously in a shared int array per side.
+ * <p>
+ * A request is evaluated by converting its codings to code ids once and marking the value sets hit on each side in a bitset.
+ * The units of each value set hit on the medication side are checked against the other side, and the triggers of matched units
+ * are marked in a trigger bitset which is visited in order to create cards.
+ * <p>
+ * When a code expander is given each SNOMED CT code in the request is replaced by the codes it expands to.
+ * For subsumption matching the hierarchy expands each code to itself and all of its ancestors. The ancestors are held as negative code ids
+ * and only match value sets of subsumption roots, value sets expanded from ECL only match the request codes themselves.
+ * <p>
+ * Once the number of fired triggers reaches the parallel evaluation threshold they are split into ranges of about the same count
+ * and the cards of each range are created on the common ForkJoinPool. The ranges are joined in trigger order so the output is identical to sequential evaluation.
+ */
+public class CDSTriggerIndex {
+
+	private static final int MEDICATION_SIDE = 0;
+	private static final int CONDITION_OR_MEDICATION_SIDE = 1;
+
+	// Fired triggers handled by each fork join task
+	private static final int TRIGGERS_PER_TASK = 1024;
+
+	private final List<CDSTrigger> triggers;
+
+	private final SnomedCodeExpander codeExpander;
+
+	// Distinct value sets on each side, the position of each is its value set id
+	private final List<List<CodeSet>> valueSets = List.of(new ArrayList<>(), new ArrayList<>());
+
+	// Value set id of each trigger on each side
+	private final int[][] triggerValueSets = new int[2][];
+
+	// Condition or second medication value set id of each unit, a unit is the triggers with the same value sets on both sides
+	private final int[] unitConditionOrMedicationValueSets;
+
+	// The triggers of unit u are unitTriggers[unitTriggerOffsets[u]] up to, but not including, unitTriggers[unitTriggerOffsets[u + 1]]
+	private final int[] unitTriggerOffsets;
+	private final int[] unitTriggers;
+
+	// The units of medication value set m are valueSetUnits[valueSetUnitOffsets[m]] up to, but not including, valueSetUnits[valueSetUnitOffsets[m + 1]]
+	private final int[] valueSetUnitOffsets;
+	private final int[] valueSetUnits;
+
+	// Sorted SNOMED CT identifiers, the position of each is its code id
+	private final long[] snomedIds;
+
+	// System -> code -> code id, for codes that are not SNOMED CT identifiers
+	private final Map<String, Map<String, Integer>> otherCodeIds = new HashMap<>();
+
+	private final int codeCount;
+
+	// The value sets of code id i on a side are postings[side][offsets[side][i]] up to, but not including, postings[side][offsets[side][i + 1]]
+	private final int[][] offsets = new int[2][];
+	private final int[][] postings = new int[2][];
+
+	// Bitset of the value sets on each side that are subsumption roots, matched by the ancestors of request codes
+	private final long[][] matchDescendantsValueSets = new long[2][];
+
+	private int parallelEvaluationThreshold = Integer.MAX_VALUE;
+
+	public CDSTriggerIndex(List<CDSTrigger> triggers) {
+		this(triggers, null);
+	}
+
+	/**
+	 * @param codeExpander expands each SNOMED CT code in a request before matching, or null to match codes exactly.
+	 */
+	public CDSTriggerIndex(List<CDSTrigger> triggers, SnomedCodeExpander codeExpander) {
+		this.triggers = triggers;
+		this.codeExpander = codeExpander;
+
+		// Share identical value sets on each side
+		triggerValueSets[MEDICATION_SIDE] = getValueSetIds(MEDICATION_SIDE);
+		triggerValueSets[CONDITION_OR_MEDICATION_SIDE] = getValueSetIds(CONDITION_OR_MEDICATION_SIDE);
+
+		// Group triggers by value set pair, units are numbered in order of their first trigger
+		Map<Long, Integer> unitIds = new HashMap<>();
+		int[] triggerUnits = new int[triggers.size()];
+		for (int triggerIndex = 0; triggerIndex < triggers.size(); triggerIndex++) {
+			long valueSetPair = ((long) triggerValueSets[MEDICATION_SIDE][triggerIndex] << 32) | triggerValueSets[CONDITION_OR_MEDICATION_SIDE][triggerIndex];
+			triggerUnits[triggerIndex] = unitIds.computeIfAbsent(valueSetPair, pair -> unitIds.size());
+		}
+		int unitCount = unitIds.size();
+		int[] unitMedicationValueSets = new int[unitCount];
+		unitConditionOrMedicationValueSets = new int[unitCount];
+		for (int triggerIndex = 0; triggerIndex < triggers.size(); triggerIndex++) {
+			unitMedicationValueSets[triggerUnits[triggerIndex]] = triggerValueSets[MEDICATION_SIDE][triggerIndex];
+			unitConditionOrMedicationValueSets[triggerUnits[triggerIndex]] = triggerValueSets[CONDITION_OR_MEDICATION_SIDE][triggerIndex];
+		}
+		unitTriggerOffsets = new int[unitCount + 1];
+		unitTriggers = groupBy(triggerUnits, unitTriggerOffsets);
+		valueSetUnitOffsets = new int[valueSets.get(MEDICATION_SIDE).size() + 1];
+		valueSetUnits = groupBy(unitMedicationValueSets, valueSetUnitOffsets);
+
+		CodeSet.Builder allCodes = CodeSet.builder();
+		for (List<CodeSet> sideValueSets : valueSets) {
+			sideValueSets.forEach(allCodes::addAll);
+		}
+		CodeSet allCodeSet = allCodes.build();
+		snomedIds = allCodeSet.toSnomedIdArray();
+		int[] nextCodeId = {snomedIds.length};
+		allCodeSet.forEachOtherCode((system, code) -> otherCodeIds.computeIfAbsent(system, s -> new HashMap<>()).put(code, nextCodeId[0]++));
+		codeCount = nextCodeId[0];
+
+		indexSide(MEDICATION_SIDE);
+		indexSide(CONDITION_OR_MEDICATION_SIDE);
+	}
+
+	/**
+	 * Creates the cards of all triggers matched by the given codings. Cards are returned in the order that the triggers were loaded.
+	 * The same set may be passed as both arguments, for medication interactions, in which case it is only converted to code ids once.
+	 * @param activeDiagnosesOrMedicationCodings codings matched against the condition, or second medication, value set of each trigger.
+	 * @param draftMedicationOrderCodings codings matched against the medication value set of each trigger.
+	 */
+	public List<CDSCard> createRelevantCards(Set<Coding> activeDiagnosesOrMedicationCodings, Set<Coding> draftMedicationOrderCodings) {
+		List<Coding> draftMedicationCodings = new ArrayList<>(draftMedicationOrderCodings);
+		CodeIds draftMedicationCodeIds = getCodeIds(draftMedicationCodings);
+		long[] medicationValueSetHits = getValueSetBits(draftMedicationCodeIds, MEDICATION_SIDE);
+		if (medicationValueSetHits == null) {
+			return Collections.emptyList();
+		}
+
+		List<Coding> conditionOrMedicationCodings;
+		CodeIds conditionOrMedicationCodeIds;
+		if (activeDiagnosesOrMedicationCodings == draftMedicationOrderCodings) {
+			conditionOrMedicationCodings = draftMedicationCodings;
+			conditionOrMedicationCodeIds = draftMedicationCodeIds;
+		} else {
+			conditionOrMedicationCodings = new ArrayList<>(activeDiagnosesOrMedicationCodings);
+			conditionOrMedicationCodeIds = getCodeIds(conditionOrMedicationCodings);
+		}
+		long[] conditionOrMedicationValueSetHits = getValueSetBits(conditionOrMedicationCodeIds, CONDITION_OR_MEDICATION_SIDE);
+		if (conditionOrMedicationValueSetHits == null) {
+			return Collections.emptyList();
+		}
+
+		// Match units and fan out to their triggers, the intersection of each value set is computed once and shared by all of its cards.
+		// There are no per side trigger bitsets to combine: a unit only fires if its value set on the other side was hit,
+		// so the work is proportional to the units of the medication value sets hit rather than to the number of triggers.
+		long[] firedTriggers = null;
+		int firedTriggerCount = 0;
+		List<Coding>[] medicationIntersections = newIntersections(MEDICATION_SIDE);
+		List<Coding>[] conditionOrMedicationIntersections = newIntersections(CONDITION_OR_MEDICATION_SIDE);
+		for (int word = 0; word < medicationValueSetHits.length; word++) {
+			long bits = medicationValueSetHits[word];
+			while (bits != 0) {
+				int medicationValueSet = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				for (int u = valueSetUnitOffsets[medicationValueSet]; u < valueSetUnitOffsets[medicationValueSet + 1]; u++) {
+					int unit = valueSetUnits[u];
+					int conditionOrMedicationValueSet = unitConditionOrMedicationValueSets[unit];
+					if (!isSet(conditionOrMedicationValueSetHits, conditionOrMedicationValueSet)) {
+						continue;
+					}
+					if (medicationIntersections[medicationValueSet] == null) {
+						medicationIntersections[medicationValueSet] =
+								getIntersection(draftMedicationCodings, draftMedicationCodeIds, MEDICATION_SIDE, medicationValueSet);
+					}
+					if (conditionOrMedicationIntersections[conditionOrMedicationValueSet] == null) {
+						conditionOrMedicationIntersections[conditionOrMedicationValueSet] =
+								getIntersection(conditionOrMedicationCodings, conditionOrMedicationCodeIds, CONDITION_OR_MEDICATION_SIDE, conditionOrMedicationValueSet);
+					}
+					if (firedTriggers == null) {
+						firedTriggers = new long[(triggers.size() + Long.SIZE - 1) / Long.SIZE];
+					}
+					// Each trigger is in one unit and each unit is reached once, through its medication value set
+					for (int t = unitTriggerOffsets[unit]; t < unitTriggerOffsets[unit + 1]; t++) {
+						int triggerIndex = unitTriggers[t];
+						firedTriggers[triggerIndex / Long.SIZE] |= 1L << triggerIndex;
+					}
+					firedTriggerCount += unitTriggerOffsets[unit + 1] - unitTriggerOffsets[unit];
+				}
+			}
+		}
+		if (firedTriggers == null) {
+			return Collections.emptyList();
+		}
+
+		CardsTask cardsTask = new CardsTask(firedTriggers, 0, firedTriggers.length, firedTriggerCount, medicationIntersections, conditionOrMedicationIntersections);
+		if (firedTriggerCount >= parallelEvaluationThreshold) {
+			return ForkJoinPool.commonPool().invoke(cardsTask);
+		}
+		return cardsTask.compute();
+	}
+
+	public List<CDSTrigger> getTriggers() {
+		return triggers;
+	}
+
+	/**
+	 * @return the distinct value sets of both sides of the triggers.
+	 */
+	public List<CodeSet> getValueSets() {
+		List<CodeSet> allValueSets = new ArrayList<>(valueSets.get(MEDICATION_SIDE));
+		allValueSets.addAll(valueSets.get(CONDITION_OR_MEDICATION_SIDE));
+		return allValueSets;
+	}
+
+	/**
+	 * @return the distinct value sets matched against draft medications, every trigger needs a match in one of these to fire.
+	 */
+	public List<CodeSet> getMedicationValueSets() {
+		return Collections.unmodifiableList(valueSets.get(MEDICATION_SIDE));
+	}
+
+	/**
+	 * @return the number of trigger groups that share the same value sets on both sides.
+	 */
+	public int getUnitCount() {
+		return unitConditionOrMedicationValueSets.length;
+	}
+
+	/**
+	 * @param parallelEvaluationThreshold number of fired triggers at which cards are created in parallel.
+	 */
+	public void setParallelEvaluationThreshold(int parallelEvaluationThreshold) {
+		this.parallelEvaluationThreshold = parallelEvaluationThreshold;
+	}
+
+	private int[] getValueSetIds(int side) {
+		List<CodeSet> sideValueSets = valueSets.get(side);
+		Map<CodeSet, Integer> valueSetIds = new HashMap<>();
+		int[] triggerValueSetIds = new int[triggers.size()];
+		for (int triggerIndex = 0; triggerIndex < triggers.size(); triggerIndex++) {
+			CodeSet codes = getCodes(triggers.get(triggerIndex), side);
+			triggerValueSetIds[triggerIndex] = valueSetIds.computeIfAbsent(codes, c -> {
+				sideValueSets.add(c);
+				return sideValueSets.size() - 1;
+			});
+		}
+		return triggerValueSetIds;
+	}
+
+	/**
+	 * Groups the positions of an array by value.
+	 * @param groupOffsets filled with the start of each group, must have a length of the group count plus one.
+	 * @return the positions in each group, in ascending order.
+	 */
+	private static int[] groupBy(int[] groups, int[] groupOffsets) {
+		for (int group : groups) {
+			groupOffsets[group + 1]++;
+		}
+		for (int i = 0; i < groupOffsets.length - 1; i++) {
+			groupOffsets[i + 1] += groupOffsets[i];
+		}
+		int[] positions = new int[groups.length];
+		int[] next = Arrays.copyOf(groupOffsets, groupOffsets.length - 1);
+		for (int i = 0; i < groups.length; i++) {
+			positions[next[groups[i]]++] = i;
+		}
+		return positions;
+	}
+
+	private void indexSide(int side) {
+		// Count the postings of each code then fill them. Value sets are visited in order so each posting list is sorted.
+		List<CodeSet> sideValueSets = valueSets.get(side);
+		long[] sideMatchDescendants = new long[(sideValueSets.size() + Long.SIZE - 1) / Long.SIZE];
+		for (int valueSetId = 0; valueSetId < sideValueSets.size(); valueSetId++) {
+			if (sideValueSets.get(valueSetId).isMatchDescendants()) {
+				sideMatchDescendants[valueSetId / Long.SIZE] |= 1L << valueSetId;
+			}
+		}
+		matchDescendantsValueSets[side] = sideMatchDescendants;
+		int[] sideOffsets = new int[codeCount + 1];
+		for (CodeSet codes : sideValueSets) {
+			codes.forEachSnomedId(sctid -> sideOffsets[Arrays.binarySearch(snomedIds, sctid) + 1]++);
+			codes.forEachOtherCode((system, code) -> sideOffsets[otherCodeIds.get(system).get(code) + 1]++);
+		}
+		for (int i = 0; i < codeCount; i++) {
+			sideOffsets[i + 1] += sideOffsets[i];
+		}
+		int[] sidePostings = new int[sideOffsets[codeCount]];
+		int[] nextPosting = Arrays.copyOf(sideOffsets, codeCount);
+		for (int valueSetId = 0; valueSetId < sideValueSets.size(); valueSetId++) {
+			int posting = valueSetId;
+			CodeSet codes = sideValueSets.get(valueSetId);
+			codes.forEachSnomedId(sctid -> sidePostings[nextPosting[Arrays.binarySearch(snomedIds, sctid)]++] = posting);
+			codes.forEachOtherCode((system, code) -> sidePostings[nextPosting[otherCodeIds.get(system).get(code)]++] = posting);
+		}
+		offsets[side] = sideOffsets;
+		postings[side] = sidePostings;
+	}
+
+	private CodeIds getCodeIds(List<Coding> codings) {
+		CodeIds codeIds = new CodeIds(codings.size());
+		for (int i = 0; i < codings.size(); i++) {
+			codeIds.offsets[i] = codeIds.size;
+			addCodeIds(codings.get(i), codeIds);
+		}
+		codeIds.offsets[codings.size()] = codeIds.size;
+		return codeIds;
+	}
+
+	private void addCodeIds(Coding coding, CodeIds codeIds) {
+		String system = coding.getSystem();
+		String code = coding.getCode();
+		if (system == null || code == null) {
+			return;
+		}
+		if (isSnomedSystem(system)) {
+			long sctid = parseSctid(code);
+			if (sctid != NOT_AN_SCTID) {
+				if (codeExpander != null) {
+					codeExpander.forEachMatchCode(sctid, (conceptId, ancestor) -> addSnomedCodeId(conceptId, ancestor, codeIds));
+				} else {
+					addSnomedCodeId(sctid, false, codeIds);
+				}
+				return;
+			}
+		}
+		Map<String, Integer> systemCodeIds = otherCodeIds.get(system);
+		Integer codeId = systemCodeIds != null ? systemCodeIds.get(code) : null;
+		if (codeId != null) {
+			codeIds.add(codeId);
+		}
+	}
+
+	private void addSnomedCodeId(long sctid, boolean ancestor, CodeIds codeIds) {
+		int codeId = Arrays.binarySearch(snomedIds, sctid);
+		if (codeId >= 0) {
+			codeIds.add(ancestor ? ~codeId : codeId);
+		}
+	}
+
+	/**
+	 * @return bitset of the value sets containing any of the codes on the given side, or null if there are none.
+	 */
+	private long[] getValueSetBits(CodeIds codeIds, int side) {
+		long[] valueSetBits = null;
+		for (int i = 0; i < codeIds.size; i++) {
+			int id = codeIds.ids[i];
+			boolean ancestor = id < 0;
+			int codeId = ancestor ? ~id : id;
+			for (int p = offsets[side][codeId]; p < offsets[side][codeId + 1]; p++) {
+				int valueSetId = postings[side][p];
+				if (ancestor && !isSet(matchDescendantsValueSets[side], valueSetId)) {
+					continue;
+				}
+				if (valueSetBits == null) {
+					valueSetBits = new long[(valueSets.get(side).size() + Long.SIZE - 1) / Long.SIZE];
+				}
+				valueSetBits[valueSetId / Long.SIZE] |= 1L << valueSetId;
+			}
+		}
+		return valueSetBits;
+	}
+
+	private static boolean isSet(long[] bits, int index) {
+		return (bits[index / Long.SIZE] & (1L << index)) != 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Coding>[] newIntersections(int side) {
+		return new List[valueSets.get(side).size()];
+	}
+
+	private List<Coding> getIntersection(List<Coding> codings, CodeIds codeIds, int side, int valueSetId) {
+		List<Coding> intersection = new ArrayList<>();
+		boolean matchDescendants = isSet(matchDescendantsValueSets[side], valueSetId);
+		for (int i = 0; i < codings.size(); i++) {
+			for (int c = codeIds.offsets[i]; c < codeIds.offsets[i + 1]; c++) {
+				int id = codeIds.ids[c];
+				if (id < 0 && !matchDescendants) {
+					continue;
+				}
+				int codeId = id < 0 ? ~id : id;
+				if (Arrays.binarySearch(postings[side], offsets[side][codeId], offsets[side][codeId + 1], valueSetId) >= 0) {
+					intersection.add(codings.get(i));
+					break;
+				}
+			}
+		}
+		return intersection;
+	}
+
+	// Creates the cards of the matched triggers within a range of bitset words,
+	// splitting the range at the word holding half of its matched triggers while it has more than TRIGGERS_PER_TASK
+	private final class CardsTask extends RecursiveTask<List<CDSCard>> {
+
+		private final long[] matchedTriggers;
+		private final int fromWord;
+		private final int toWord;
+		private final int matchedTriggerCount;
+		private final List<Coding>[] medicationIntersections;
+		private final List<Coding>[] conditionOrMedicationIntersections;
+
+		private CardsTask(long[] matchedTriggers, int fromWord, int toWord, int matchedTriggerCount,
+				List<Coding>[] medicationIntersections, List<Coding>[] conditionOrMedicationIntersections) {
+			this.matchedTriggers = matchedTriggers;
+			this.fromWord = fromWord;
+			this.toWord = toWord;
+			this.matchedTriggerCount = matchedTriggerCount;
+			this.medicationIntersections = medicationIntersections;
+			this.conditionOrMedicationIntersections = conditionOrMedicationIntersections;
+		}
+
+		@Override
+		protected List<CDSCard> compute() {
+			if (inForkJoinPool() && matchedTriggerCount > TRIGGERS_PER_TASK && toWord - fromWord > 1) {
+				int middleWord = fromWord;
+				int firstCount = 0;
+				do {
+					firstCount += Long.bitCount(matchedTriggers[middleWord++]);
+				} while (firstCount < matchedTriggerCount / 2 && middleWord < toWord - 1);
+				CardsTask first = new CardsTask(matchedTriggers, fromWord, middleWord, firstCount, medicationIntersections, conditionOrMedicationIntersections);
+				CardsTask second = new CardsTask(matchedTriggers, middleWord, toWord, matchedTriggerCount - firstCount,
+						medicationIntersections, conditionOrMedicationIntersections);
+				second.fork();
+				List<CDSCard> cards = first.compute();
+				cards.addAll(second.join());
+				return cards;
+			}
+
+			List<CDSCard> cards = new ArrayList<>();
+			for (int word = fromWord; word < toWord; word++) {
+				long bits = matchedTriggers[word];
+				while (bits != 0) {
+					int triggerIndex = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					CDSCard card = triggers.get(triggerIndex).createCard(
+							medicationIntersections[triggerValueSets[MEDICATION_SIDE][triggerIndex]],
+							conditionOrMedicationIntersections[triggerValueSets[CONDITION_OR_MEDICATION_SIDE][triggerIndex]]);
+					if (card != null) {
+						cards.add(card);
+					}
+				}
+			}
+			return cards;
+		}
+	}
+
+	// The code ids of request coding i are ids[offsets[i]] up to, but not including, ids[offsets[i + 1]], ancestor code ids are stored as ~codeId
+	private static final class CodeIds {
+
+		private final int[] offsets;
+		private int[] ids;
+		private int size;
+
+		private CodeIds(int codingCount) {
+			offsets = new int[codingCount + 1];
+			ids = new int[Math.max(codingCount, 1)];
+		}
+
+		private void add(int codeId) {
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = codeId;
+		}
+	}
+
+	private static CodeSet getCodes(CDSTrigger trigger, int side) {
+		return side == MEDICATION_SIDE ? trigger.getMedicationCodes() : trigger.getConditionCodes();
+	}
+}
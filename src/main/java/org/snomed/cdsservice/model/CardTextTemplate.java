@@ -0,0 +1,85 @@
+package org.snomed.cdsservice.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Card summary or detail text with its placeholders parsed when the rule is loaded.
+ * Placeholders that depend only on the rule, such as {{RuleMedication}}, are resolved when the template is compiled.
+ * The text is held as literal segments between the two remaining placeholders, which are filled with the matched codings
+ * from the request in a single append pass when a card is created.
+ */
+public final class CardTextTemplate {
+
+	public static final int FIRST = 0;
+	public static final int SECOND = 1;
+
+	// Literals surrounding each placeholder, literals.length is always placeholders.length + 1
+	private final String[] literals;
+	private final int[] placeholders;
+	private final int literalLength;
+
+	private CardTextTemplate(String[] literals, int[] placeholders) {
+		this.literals = literals;
+		this.placeholders = placeholders;
+		int length = 0;
+		for (String literal : literals) {
+			length += literal.length();
+		}
+		this.literalLength = length;
+	}
+
+	/**
+	 * @param text template text, may be null.
+	 * @param rulePlaceholders names of the placeholders that depend only on the rule, without braces, mapped to their values.
+	 * @param firstPlaceholder name of the placeholder filled with the first value when rendering.
+	 * @param secondPlaceholder name of the placeholder filled with the second value when rendering.
+	 * @return the compiled template, or null if the text is null.
+	 */
+	public static CardTextTemplate compile(String text, Map<String, String> rulePlaceholders, String firstPlaceholder, String secondPlaceholder) {
+		if (text == null) {
+			return null;
+		}
+		List<String> literals = new ArrayList<>();
+		List<Integer> placeholders = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+		int position = 0;
+		while (position < text.length()) {
+			int start = text.indexOf("{{", position);
+			int end = start != -1 ? text.indexOf("}}", start + 2) : -1;
+			if (end == -1) {
+				literal.append(text, position, text.length());
+				break;
+			}
+			literal.append(text, position, start);
+			String name = text.substring(start + 2, end);
+			if (name.equals(firstPlaceholder) || name.equals(secondPlaceholder)) {
+				literals.add(literal.toString());
+				literal.setLength(0);
+				placeholders.add(name.equals(firstPlaceholder) ? FIRST : SECOND);
+			} else if (rulePlaceholders.containsKey(name)) {
+				literal.append(rulePlaceholders.get(name));
+			} else {
+				// Unknown placeholders are left in the text
+				literal.append(text, start, end + 2);
+			}
+			position = end + 2;
+		}
+		literals.add(literal.toString());
+		return new CardTextTemplate(literals.toArray(new String[0]), placeholders.stream().mapToInt(Integer::intValue).toArray());
+	}
+
+	public String render(String first, String second) {
+		if (placeholders.length == 0) {
+			return literals[0];
+		}
+		StringBuilder builder = new StringBuilder(literalLength + placeholders.length * Math.max(first.length(), second.length()));
+		for (int i = 0; i < placeholders.length; i++) {
+			builder.append(literals[i]);
+			builder.append(placeholders[i] == FIRST ? first : second);
+		}
+		builder.append(literals[placeholders.length]);
+		return builder.toString();
+	}
+}
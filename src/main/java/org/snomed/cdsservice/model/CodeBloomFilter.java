@@ -0,0 +1,110 @@
+package org.snomed.cdsservice.model;
+
+import org.hl7.fhir.r4.model.Coding;
+
+import java.util.Collection;
+
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.NOT_AN_SCTID;
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.isSnomedSystem;
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.parseSctid;
+
+/**
+ * Immutable Bloom filter over a set of codes, used to rule out requests that cannot match any trigger without allocating.
+ * A negative answer is exact, a positive answer may be a false positive at a rate of about 1% with the sizing used here.
+ * SNOMED CT identifiers are hashed as longs, codes from other systems are hashed from the system and code strings.
+ */
+public final class CodeBloomFilter {
+
+	private static final int BITS_PER_CODE = 10;
+	private static final int HASH_COUNT = 7;
+	// 8MB, enough for the target false positive rate with over six million codes
+	private static final int MAX_WORDS = 1 << 20;
+
+	private final long[] bits;
+	private final int bitMask;
+
+	private CodeBloomFilter(long[] bits) {
+		this.bits = bits;
+		this.bitMask = bits.length * Long.SIZE - 1;
+	}
+
+	public static CodeBloomFilter of(Collection<CodeSet> codeSets) {
+		long codeCount = 0;
+		for (CodeSet codeSet : codeSets) {
+			codeCount += codeSet.size();
+		}
+		// Power of two number of bits so that bit positions can be masked
+		long bitCount = Long.highestOneBit(Math.max(Long.SIZE, codeCount * BITS_PER_CODE - 1)) << 1;
+		CodeBloomFilter filter = new CodeBloomFilter(new long[(int) Math.min(bitCount / Long.SIZE, MAX_WORDS)]);
+		for (CodeSet codeSet : codeSets) {
+			codeSet.forEachSnomedId(sctid -> filter.put(sctid));
+			codeSet.forEachOtherCode((system, code) -> filter.put(hashOtherCode(system, code)));
+		}
+		return filter;
+	}
+
+	/**
+	 * @param hierarchy when not null, SNOMED CT codes are also tested using each of their ancestors.
+	 * @return false if none of the codings are in the filter, true if any may be.
+	 */
+	public boolean mightContainAny(Collection<Coding> codings, SnomedHierarchy hierarchy) {
+		for (Coding coding : codings) {
+			if (mightContain(coding, hierarchy)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public boolean mightContain(Coding coding, SnomedHierarchy hierarchy) {
+		String system = coding.getSystem();
+		String code = coding.getCode();
+		if (system == null || code == null) {
+			return false;
+		}
+		if (isSnomedSystem(system)) {
+			long sctid = parseSctid(code);
+			if (sctid != NOT_AN_SCTID) {
+				return hierarchy != null ? hierarchy.anyAncestorOrSelf(sctid, this::mightContainKey) : mightContainKey(sctid);
+			}
+		}
+		return mightContainKey(hashOtherCode(system, code));
+	}
+
+	private void put(long key) {
+		long hash = mix(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < HASH_COUNT; i++) {
+			int bit = (h1 + i * h2) & bitMask;
+			bits[bit >>> 6] |= 1L << bit;
+		}
+	}
+
+	private boolean mightContainKey(long key) {
+		long hash = mix(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < HASH_COUNT; i++) {
+			int bit = (h1 + i * h2) & bitMask;
+			if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long hashOtherCode(String system, String code) {
+		return ((long) system.hashCode() << 32) ^ (code.hashCode() & 0xFFFFFFFFL);
+	}
+
+	// MurmurHash3 64 bit finalizer, spreads sequential identifiers across the filter
+	private static long mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return key;
+	}
+}
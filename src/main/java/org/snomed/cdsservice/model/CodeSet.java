@@ -0,0 +1,209 @@
+package org.snomed.cdsservice.model;
+
+import org.hl7.fhir.r4.model.Coding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.LongConsumer;
+
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.NOT_AN_SCTID;
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.SNOMEDCT_SYSTEM;
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.isSnomedSystem;
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.parseSctid;
+
+/**
+ * Immutable set of codes, used to hold the members of an expanded value set.
+ * SNOMED CT identifiers are held as a sorted array of longs, using eight bytes per member with binary search lookup,
+ * rather than a Coding object and strings per member.
+ * Codes from other systems, or SNOMED CT codes that are not valid identifiers, are held in a separate map which is normally empty.
+ * <p>
+ * A set built with {@link Builder#matchDescendants()} holds only the root concepts of a rule for subsumption matching,
+ * so its members also match their descendants. Any other set, such as an ECL expansion, only matches its members exactly.
+ */
+public final class CodeSet {
+
+	public static final CodeSet EMPTY = new CodeSet(new long[0], Collections.emptyMap(), false);
+
+	private final long[] snomedIds;
+	private final Map<String, Set<String>> otherCodes;
+	private final boolean matchDescendants;
+	private int hash;
+
+	private CodeSet(long[] snomedIds, Map<String, Set<String>> otherCodes, boolean matchDescendants) {
+		this.snomedIds = snomedIds;
+		this.otherCodes = otherCodes;
+		this.matchDescendants = matchDescendants;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public static CodeSet of(Collection<Coding> codings) {
+		Builder builder = builder();
+		for (Coding coding : codings) {
+			builder.add(coding.getSystem(), coding.getCode());
+		}
+		return builder.build();
+	}
+
+	public boolean contains(Coding coding) {
+		return contains(coding.getSystem(), coding.getCode());
+	}
+
+	public boolean contains(String system, String code) {
+		if (system == null || code == null) {
+			return false;
+		}
+		if (isSnomedSystem(system)) {
+			long sctid = parseSctid(code);
+			if (sctid != NOT_AN_SCTID) {
+				return containsSnomedId(sctid);
+			}
+		}
+		Set<String> codes = otherCodes.get(system);
+		return codes != null && codes.contains(code);
+	}
+
+	public boolean containsSnomedId(long sctid) {
+		return Arrays.binarySearch(snomedIds, sctid) >= 0;
+	}
+
+	public void forEachSnomedId(LongConsumer consumer) {
+		for (long sctid : snomedIds) {
+			consumer.accept(sctid);
+		}
+	}
+
+	/**
+	 * @return a sorted copy of the SNOMED CT identifiers in this set.
+	 */
+	public long[] toSnomedIdArray() {
+		return snomedIds.clone();
+	}
+
+	public void forEachOtherCode(BiConsumer<String, String> consumer) {
+		otherCodes.forEach((system, codes) -> codes.forEach(code -> consumer.accept(system, code)));
+	}
+
+	/**
+	 * Creates a Coding for every member. This allocates an object per member so is intended for small sets only.
+	 */
+	public List<Coding> toCodings() {
+		List<Coding> codings = new ArrayList<>(size());
+		forEachSnomedId(sctid -> codings.add(new Coding(SNOMEDCT_SYSTEM, Long.toString(sctid), null)));
+		forEachOtherCode((system, code) -> codings.add(new Coding(system, code, null)));
+		return codings;
+	}
+
+	public int size() {
+		int size = snomedIds.length;
+		for (Set<String> codes : otherCodes.values()) {
+			size += codes.size();
+		}
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * @return true if the SNOMED CT members are subsumption roots that also match their descendants.
+	 */
+	public boolean isMatchDescendants() {
+		return matchDescendants;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		CodeSet codeSet = (CodeSet) o;
+		return hashCode() == codeSet.hashCode() && matchDescendants == codeSet.matchDescendants && Arrays.equals(snomedIds, codeSet.snomedIds) && otherCodes.equals(codeSet.otherCodes);
+	}
+
+	@Override
+	public int hashCode() {
+		// Cached, sets are immutable and may be large
+		int h = hash;
+		if (h == 0) {
+			h = 31 * (31 * Arrays.hashCode(snomedIds) + otherCodes.hashCode()) + Boolean.hashCode(matchDescendants);
+			hash = h;
+		}
+		return h;
+	}
+
+	public static final class Builder {
+
+		private long[] snomedIds = new long[16];
+		private int snomedIdCount;
+		private Map<String, Set<String>> otherCodes;
+		private boolean matchDescendants;
+
+		private Builder() {
+		}
+
+		/**
+		 * Marks the set as subsumption roots, see {@link CodeSet#isMatchDescendants()}.
+		 */
+		public Builder matchDescendants() {
+			matchDescendants = true;
+			return this;
+		}
+
+		public Builder add(String system, String code) {
+			if (system == null || code == null) {
+				return this;
+			}
+			if (isSnomedSystem(system)) {
+				long sctid = parseSctid(code);
+				if (sctid != NOT_AN_SCTID) {
+					return addSnomedId(sctid);
+				}
+			}
+			if (otherCodes == null) {
+				otherCodes = new HashMap<>();
+			}
+			otherCodes.computeIfAbsent(system, s -> new HashSet<>()).add(code);
+			return this;
+		}
+
+		public Builder addSnomedId(long sctid) {
+			if (snomedIdCount == snomedIds.length) {
+				snomedIds = Arrays.copyOf(snomedIds, snomedIdCount * 2);
+			}
+			snomedIds[snomedIdCount++] = sctid;
+			return this;
+		}
+
+		public Builder addAll(CodeSet codeSet) {
+			codeSet.forEachSnomedId(this::addSnomedId);
+			codeSet.forEachOtherCode(this::add);
+			return this;
+		}
+
+		public CodeSet build() {
+			long[] sorted = Arrays.copyOf(snomedIds, snomedIdCount);
+			Arrays.sort(sorted);
+			int unique = 0;
+			for (int i = 0; i < sorted.length; i++) {
+				if (i == 0 || sorted[i] != sorted[i - 1]) {
+					sorted[unique++] = sorted[i];
+				}
+			}
+			if (unique < sorted.length) {
+				sorted = Arrays.copyOf(sorted, unique);
+			}
+			return new CodeSet(sorted, otherCodes != null ? otherCodes : Collections.emptyMap(), matchDescendants);
+		}
+	}
+}
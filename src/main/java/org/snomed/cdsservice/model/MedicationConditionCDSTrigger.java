@@ -3,22 +3,27 @@ package org.snomed.cdsservice.model;
 import org.hl7.fhir.r4.model.Coding;
 
 import java.util.Collection;
-import java.util.Set;
+import java.util.Map;
 
 public class MedicationConditionCDSTrigger extends CDSTrigger {
 
-    public MedicationConditionCDSTrigger(String medicationLabel, Collection<Coding> medicationCodings, String conditionLabel, Collection<Coding> conditionCodings, CDSCard card) {
-        super(medicationLabel, medicationCodings, conditionLabel, conditionCodings, card);
+    private final CardTextTemplate summaryTemplate;
+    private final CardTextTemplate detailTemplate;
+
+    public MedicationConditionCDSTrigger(String medicationLabel, CodeSet medicationCodes, String conditionLabel, CodeSet conditionCodes, CDSCard card) {
+        super(medicationLabel, medicationCodes, conditionLabel, conditionCodes, card);
+        Map<String, String> rulePlaceholders = Map.of("RuleMedication", medicationLabel, "RuleCondition", conditionLabel);
+        summaryTemplate = CardTextTemplate.compile(card.getSummary(), rulePlaceholders, "ActualMedication", "ActualCondition");
+        detailTemplate = CardTextTemplate.compile(card.getDetail(), rulePlaceholders, "ActualMedication", "ActualCondition");
     }
 
-    public CDSCard createRelevantCard(Set<Coding> activeDiagnosesCodings, Set<Coding> draftMedicationOrderCodings) {
-        Collection<Coding> conditionIntersection = getIntersection(activeDiagnosesCodings, getConditionCodings());
-        Collection<Coding> medicationIntersection = getIntersection(draftMedicationOrderCodings, getMedicationCodings());
+    @Override
+    protected CDSCard renderCard(Collection<Coding> medicationIntersection, Collection<Coding> conditionIntersection) {
         if (!conditionIntersection.isEmpty() && !medicationIntersection.isEmpty()) {
-            CDSCard cardInstance = getCard().cloneCard();
+            String actualMedication = toHumanReadable(medicationIntersection);
+            String actualCondition = toHumanReadable(conditionIntersection);
+            CDSCard cardInstance = createCardInstance(render(summaryTemplate, actualMedication, actualCondition), render(detailTemplate, actualMedication, actualCondition));
 
-            cardInstance.setSummary(processTextTemplate(cardInstance.getSummary(), conditionIntersection, medicationIntersection));
-            cardInstance.setDetail(processTextTemplate(cardInstance.getDetail(), conditionIntersection, medicationIntersection));
             addReferenceMedicationToCDSCard(medicationIntersection, cardInstance);
             addReferenceConditionToCDSCard(conditionIntersection, cardInstance);
 
@@ -27,16 +32,4 @@ public class MedicationConditionCDSTrigger extends CDSTrigger {
             return null;
         }
     }
-    public String processTextTemplate(String text, Collection<Coding> conditionIntersection, Collection<Coding> medicationIntersection) {
-        if (text == null) {
-            return null;
-        }
-
-        text = text.replace("{{RuleMedication}}", getMedicationLabel());
-        text = text.replace("{{ActualMedication}}", toHumanReadable(medicationIntersection));
-        text = text.replace("{{RuleCondition}}", getConditionLabel());
-        text = text.replace("{{ActualCondition}}", toHumanReadable(conditionIntersection));
-
-        return text;
-    }
 }
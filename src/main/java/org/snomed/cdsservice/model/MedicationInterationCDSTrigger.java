@@ -3,24 +3,27 @@ package org.snomed.cdsservice.model;
 import org.hl7.fhir.r4.model.Coding;
 
 import java.util.Collection;
-import java.util.Set;
+import java.util.Map;
 
 public class MedicationInterationCDSTrigger extends CDSTrigger {
 
-    public MedicationInterationCDSTrigger(String medication1Label, Collection<Coding> medication1Codings, String medication2Label, Collection<Coding> medication2Codings, CDSCard card) {
-        super(medication1Label, medication1Codings, medication2Label, medication2Codings, card);
+    private final CardTextTemplate summaryTemplate;
+    private final CardTextTemplate detailTemplate;
+
+    public MedicationInterationCDSTrigger(String medication1Label, CodeSet medication1Codes, String medication2Label, CodeSet medication2Codes, CDSCard card) {
+        super(medication1Label, medication1Codes, medication2Label, medication2Codes, card);
+        Map<String, String> rulePlaceholders = Map.of("RuleMedication1", medication1Label, "RuleMedication2", medication2Label);
+        summaryTemplate = CardTextTemplate.compile(card.getSummary(), rulePlaceholders, "ActualMedication1", "ActualMedication2");
+        detailTemplate = CardTextTemplate.compile(card.getDetail(), rulePlaceholders, "ActualMedication1", "ActualMedication2");
     }
 
     @Override
-    public CDSCard createRelevantCard(Set<Coding> activeDiagnosesOrMedicationCodings, Set<Coding> draftMedicationOrderCodings) {
-        Collection<Coding> medication1Intersection = getIntersection(draftMedicationOrderCodings, getMedicationCodings());
-        Collection<Coding> medication2Intersection = getIntersection(activeDiagnosesOrMedicationCodings, getMedication2Codings());
-
+    protected CDSCard renderCard(Collection<Coding> medication1Intersection, Collection<Coding> medication2Intersection) {
         if (!medication2Intersection.isEmpty() && !medication1Intersection.isEmpty()) {
-            CDSCard cardInstance = getCard().cloneCard();
+            String actualMedication1 = toHumanReadable(medication1Intersection);
+            String actualMedication2 = toHumanReadable(medication2Intersection);
+            CDSCard cardInstance = createCardInstance(render(summaryTemplate, actualMedication1, actualMedication2), render(detailTemplate, actualMedication1, actualMedication2));
 
-            cardInstance.setSummary(processTextTemplate(cardInstance.getSummary(), medication1Intersection, medication2Intersection));
-            cardInstance.setDetail(processTextTemplate(cardInstance.getDetail(), medication1Intersection, medication2Intersection));
             addReferenceMedicationToCDSCard(medication1Intersection, cardInstance);
             addReferenceMedicationToCDSCard(medication2Intersection, cardInstance);
 
@@ -29,19 +32,4 @@ public class MedicationInterationCDSTrigger extends CDSTrigger {
             return null;
         }
     }
-
-    @Override
-    String processTextTemplate(String text, Collection<Coding> medication1Intersection, Collection<Coding> medication2Intersection) {
-        if (text == null) {
-            return null;
-        }
-
-        text = text.replace("{{RuleMedication1}}", getMedicationLabel());
-        text = text.replace("{{ActualMedication1}}", toHumanReadable(medication1Intersection));
-        text = text.replace("{{RuleMedication2}}", getMedication2Label());
-        text = text.replace("{{ActualMedication2}}", toHumanReadable(medication2Intersection));
-
-        return text;
-    }
-
 }
@@ -0,0 +1,21 @@
+package org.snomed.cdsservice.model;
+
+/**
+ * Expands a SNOMED CT code from a request into the codes matched against trigger value sets.
+ */
+@FunctionalInterface
+public interface SnomedCodeExpander {
+
+	void forEachMatchCode(long conceptId, MatchCodeConsumer consumer);
+
+	@FunctionalInterface
+	interface MatchCodeConsumer {
+
+		/**
+		 * @param ancestor true if the code is an ancestor of a code the request matches exactly,
+		 * such codes only match value sets of subsumption roots, see {@link CodeSet#isMatchDescendants()}.
+		 */
+		void accept(long conceptId, boolean ancestor);
+
+	}
+}
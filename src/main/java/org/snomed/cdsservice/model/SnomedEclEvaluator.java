@@ -0,0 +1,291 @@
+package org.snomed.cdsservice.model;
+
+import java.util.BitSet;
+
+/**
+ * Evaluates SNOMED CT Expression Constraint Language against a local snapshot, for the subset of ECL used in rules and the dose form map:
+ * concept references, the descendant, ancestor, child and parent operators, the wildcard, AND, OR and MINUS,
+ * and refinements of attributes with = or != including attribute groups, for example
+ * <code>&lt; 736542009 : 736472000 = &lt;&lt;827107003, 736474004 = &lt;&lt;764295003</code>.
+ * <p>
+ * Sets of concepts are held as bit sets over the concept indexes of the snapshot.
+ * ECL outside this subset, such as member of, cardinality, reverse attributes or concrete value comparisons, is rejected with an IllegalArgumentException.
+ */
+public class SnomedEclEvaluator {
+
+	private final SnomedSnapshot snapshot;
+
+	public SnomedEclEvaluator(SnomedSnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * @return the active concepts that match the expression constraint.
+	 * @throws IllegalArgumentException if the expression is not valid or uses ECL that is not supported.
+	 */
+	public CodeSet evaluate(String ecl) {
+		Parser parser = new Parser(ecl);
+		BitSet matches = parser.expression();
+		parser.skipWhitespace();
+		if (!parser.atEnd()) {
+			throw parser.error("Unexpected character");
+		}
+		CodeSet.Builder codes = CodeSet.builder();
+		for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+			codes.addSnomedId(snapshot.conceptIdAt(i));
+		}
+		return codes.build();
+	}
+
+	@FunctionalInterface
+	private interface Refinement {
+		/**
+		 * @param group the relationship group the attributes must be in, or -1 for any group.
+		 */
+		boolean matches(int conceptIndex, int group);
+	}
+
+	private enum Operator {
+		SELF, DESCENDANT_OR_SELF, DESCENDANT, CHILD_OR_SELF, CHILD, ANCESTOR_OR_SELF, ANCESTOR, PARENT_OR_SELF, PARENT
+	}
+
+	private final class Parser {
+
+		private final String ecl;
+		private int position;
+
+		private Parser(String ecl) {
+			this.ecl = ecl;
+		}
+
+		// expression = refinedExpression *((AND / "," / OR / MINUS) refinedExpression), evaluated from left to right
+		private BitSet expression() {
+			BitSet result = refinedExpression();
+			while (true) {
+				skipWhitespace();
+				if (acceptKeyword("AND") || accept(",")) {
+					result.and(refinedExpression());
+				} else if (acceptKeyword("OR")) {
+					result.or(refinedExpression());
+				} else if (acceptKeyword("MINUS")) {
+					result.andNot(refinedExpression());
+				} else {
+					return result;
+				}
+			}
+		}
+
+		// refinedExpression = subExpression [":" refinement]
+		private BitSet refinedExpression() {
+			BitSet focus = subExpression();
+			skipWhitespace();
+			if (!accept(":")) {
+				return focus;
+			}
+			Refinement refinement = refinement();
+			BitSet refined = new BitSet();
+			for (int i = focus.nextSetBit(0); i >= 0; i = focus.nextSetBit(i + 1)) {
+				if (refinement.matches(i, -1)) {
+					refined.set(i);
+				}
+			}
+			return refined;
+		}
+
+		// subExpression = [operator] (conceptReference / "*" / "(" expression ")")
+		private BitSet subExpression() {
+			skipWhitespace();
+			Operator operator = operator();
+			skipWhitespace();
+			BitSet focus;
+			if (accept("(")) {
+				focus = expression();
+				skipWhitespace();
+				expect(")");
+			} else if (accept("*")) {
+				focus = new BitSet();
+				focus.set(0, snapshot.getConceptCount());
+			} else if (peek() == '^') {
+				throw error("Member of is not supported");
+			} else {
+				focus = new BitSet();
+				int index = snapshot.indexOf(conceptReference());
+				if (index >= 0) {
+					focus.set(index);
+				}
+			}
+			return apply(operator, focus);
+		}
+
+		private Operator operator() {
+			if (accept("<<!")) {
+				return Operator.CHILD_OR_SELF;
+			} else if (accept("<<")) {
+				return Operator.DESCENDANT_OR_SELF;
+			} else if (accept("<!")) {
+				return Operator.CHILD;
+			} else if (accept("<")) {
+				return Operator.DESCENDANT;
+			} else if (accept(">>!")) {
+				return Operator.PARENT_OR_SELF;
+			} else if (accept(">>")) {
+				return Operator.ANCESTOR_OR_SELF;
+			} else if (accept(">!")) {
+				return Operator.PARENT;
+			} else if (accept(">")) {
+				return Operator.ANCESTOR;
+			}
+			return Operator.SELF;
+		}
+
+		private BitSet apply(Operator operator, BitSet focus) {
+			if (operator == Operator.SELF) {
+				return focus;
+			}
+			boolean descendants = operator == Operator.DESCENDANT_OR_SELF || operator == Operator.DESCENDANT || operator == Operator.CHILD_OR_SELF || operator == Operator.CHILD;
+			boolean directOnly = operator == Operator.CHILD_OR_SELF || operator == Operator.CHILD || operator == Operator.PARENT_OR_SELF || operator == Operator.PARENT;
+			boolean includeSelf = operator == Operator.DESCENDANT_OR_SELF || operator == Operator.CHILD_OR_SELF || operator == Operator.ANCESTOR_OR_SELF
+					|| operator == Operator.PARENT_OR_SELF;
+			BitSet result = new BitSet();
+			for (int i = focus.nextSetBit(0); i >= 0; i = focus.nextSetBit(i + 1)) {
+				snapshot.addRelatives(i, descendants, directOnly, result);
+			}
+			if (includeSelf) {
+				result.or(focus);
+			}
+			return result;
+		}
+
+		// conceptReference = sctid ["|" term "|"]
+		private long conceptReference() {
+			int start = position;
+			while (!atEnd() && Character.isDigit(peek())) {
+				position++;
+			}
+			if (start == position) {
+				throw error("Expected a concept identifier");
+			}
+			long conceptId = Long.parseLong(ecl.substring(start, position));
+			skipWhitespace();
+			if (accept("|")) {
+				int end = ecl.indexOf('|', position);
+				if (end == -1) {
+					throw error("Term is not closed");
+				}
+				position = end + 1;
+			}
+			return conceptId;
+		}
+
+		// refinement = refinementTerm *((AND / "," / OR) refinementTerm), evaluated from left to right
+		private Refinement refinement() {
+			Refinement refinement = refinementTerm();
+			while (true) {
+				skipWhitespace();
+				Refinement left = refinement;
+				if (acceptKeyword("AND") || accept(",")) {
+					Refinement right = refinementTerm();
+					refinement = (conceptIndex, group) -> left.matches(conceptIndex, group) && right.matches(conceptIndex, group);
+				} else if (acceptKeyword("OR")) {
+					Refinement right = refinementTerm();
+					refinement = (conceptIndex, group) -> left.matches(conceptIndex, group) || right.matches(conceptIndex, group);
+				} else {
+					return refinement;
+				}
+			}
+		}
+
+		// refinementTerm = "{" refinement "}" / "(" refinement ")" / attribute
+		private Refinement refinementTerm() {
+			skipWhitespace();
+			if (accept("{")) {
+				Refinement groupRefinement = refinement();
+				skipWhitespace();
+				expect("}");
+				// All attributes in the braces must be in one group
+				return (conceptIndex, group) -> {
+					for (int conceptGroup : snapshot.getGroups(conceptIndex)) {
+						if (groupRefinement.matches(conceptIndex, conceptGroup)) {
+							return true;
+						}
+					}
+					return false;
+				};
+			}
+			if (accept("(")) {
+				Refinement nested = refinement();
+				skipWhitespace();
+				expect(")");
+				return nested;
+			}
+			return attribute();
+		}
+
+		// attribute = subExpression ("=" / "!=") subExpression
+		private Refinement attribute() {
+			if (peek() == '[') {
+				throw error("Cardinality is not supported");
+			}
+			if (peek() == 'R' || peek() == 'r') {
+				throw error("Reverse attributes are not supported");
+			}
+			BitSet types = subExpression();
+			skipWhitespace();
+			boolean negated;
+			if (accept("!=")) {
+				negated = true;
+			} else if (accept("=")) {
+				negated = false;
+			} else {
+				throw error("Expected = or != after attribute name");
+			}
+			skipWhitespace();
+			if (peek() == '#' || peek() == '"') {
+				throw error("Concrete values are not supported");
+			}
+			BitSet values = subExpression();
+			return (conceptIndex, group) -> snapshot.hasAttribute(conceptIndex, types, values, negated, group);
+		}
+
+		private boolean acceptKeyword(String keyword) {
+			int end = position + keyword.length();
+			if (ecl.regionMatches(true, position, keyword, 0, keyword.length()) && (end == ecl.length() || !Character.isLetterOrDigit(ecl.charAt(end)))) {
+				position = end;
+				return true;
+			}
+			return false;
+		}
+
+		private boolean accept(String token) {
+			if (ecl.startsWith(token, position)) {
+				position += token.length();
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(String token) {
+			if (!accept(token)) {
+				throw error("Expected '" + token + "'");
+			}
+		}
+
+		private char peek() {
+			return atEnd() ? 0 : ecl.charAt(position);
+		}
+
+		private boolean atEnd() {
+			return position >= ecl.length();
+		}
+
+		private void skipWhitespace() {
+			while (!atEnd() && Character.isWhitespace(ecl.charAt(position))) {
+				position++;
+			}
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(String.format("%s at position %s of ECL '%s'.", message, position, ecl));
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package org.snomed.cdsservice.model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * SNOMED CT IS-A hierarchy used for subsumption matching, either a local snapshot or a hierarchy file.
+ */
+public interface SnomedHierarchy extends SnomedCodeExpander {
+
+	/**
+	 * Loads a hierarchy file, see {@link SnomedSupertypeHierarchy#load(Path)}.
+	 */
+	static SnomedHierarchy load(Path path) throws IOException {
+		return SnomedSupertypeHierarchy.load(path);
+	}
+
+	/**
+	 * Tests the given concept and then its ancestors, each once, stopping at the first that matches the predicate.
+	 * @return true if the concept or any ancestor matches.
+	 */
+	boolean anyAncestorOrSelf(long conceptId, LongPredicate predicate);
+
+	int getConceptCount();
+
+	/**
+	 * Visits the given concept and all of its ancestors, each once.
+	 */
+	default void forEachAncestorOrSelf(long conceptId, LongConsumer consumer) {
+		anyAncestorOrSelf(conceptId, id -> {
+			consumer.accept(id);
+			return false;
+		});
+	}
+
+	/**
+	 * Matches the given concept and all of its ancestors, for subsumption matching.
+	 */
+	@Override
+	default void forEachMatchCode(long conceptId, MatchCodeConsumer consumer) {
+		forEachAncestorOrSelf(conceptId, id -> consumer.accept(id, id != conceptId));
+	}
+
+	default boolean isAncestorOrSelf(long ancestorId, long conceptId) {
+		return anyAncestorOrSelf(conceptId, id -> id == ancestorId);
+	}
+}
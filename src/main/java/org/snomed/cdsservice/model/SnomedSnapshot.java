@@ -0,0 +1,546 @@
+package org.snomed.cdsservice.model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import java.util.stream.Stream;
+
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.NOT_AN_SCTID;
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.parseSctid;
+
+/**
+ * Immutable in memory copy of the active content of a SNOMED CT RF2 snapshot, enough to answer a $lookup with the display and normal form of a concept.
+ * Concepts are held in a sorted array of longs, the index of a concept is used to find its display and definition status.
+ * The relationships of each concept are stored contiguously in shared arrays, ordered by group then type.
+ * Concrete values are stored in the same arrays as a negative destination that indexes the concrete value table.
+ * The subtypes of each concept are indexed the same way, by concept index, so that descendants can be found without a search.
+ * The snapshot is also the IS-A hierarchy for subsumption matching when one is configured, so the hierarchy is not loaded twice.
+ */
+public class SnomedSnapshot implements SnomedHierarchy {
+
+	public static final long IS_A = 116680003L;
+	public static final long US_ENGLISH_LANGUAGE_REFSET = 900000000000509007L;
+
+	private static final String DEFINED = "900000000000073002";
+	private static final String FSN = "900000000000003001";
+	private static final String SYNONYM = "900000000000013009";
+	private static final String PREFERRED = "900000000000548007";
+	private static final String ADDITIONAL_RELATIONSHIP = "900000000000227009";
+
+	private static final String CONCEPT_FILE_PREFIX = "sct2_Concept_Snapshot";
+	private static final String DESCRIPTION_FILE_PREFIX = "sct2_Description_Snapshot";
+	private static final String LANGUAGE_REFSET_FILE_PREFIX = "der2_cRefset_LanguageSnapshot";
+	private static final String INFERRED_RELATIONSHIP_FILE_PREFIX = "sct2_Relationship_Snapshot";
+	private static final String CONCRETE_VALUE_FILE_PREFIX = "sct2_RelationshipConcreteValues_Snapshot";
+
+	private final long[] conceptIds;
+	private final BitSet defined;
+	private final String[] displays;
+	private final int[] offsets;
+	private final long[] typeIds;
+	private final int[] groups;
+	private final long[] destinationIds;
+	private final String[] concreteValues;
+	private final int[] subtypeOffsets;
+	private final int[] subtypeIndexes;
+
+	private SnomedSnapshot(long[] conceptIds, BitSet defined, String[] displays, int[] offsets, long[] typeIds, int[] groups, long[] destinationIds,
+			String[] concreteValues, int[] subtypeOffsets, int[] subtypeIndexes) {
+		this.conceptIds = conceptIds;
+		this.defined = defined;
+		this.displays = displays;
+		this.offsets = offsets;
+		this.typeIds = typeIds;
+		this.groups = groups;
+		this.destinationIds = destinationIds;
+		this.concreteValues = concreteValues;
+		this.subtypeOffsets = subtypeOffsets;
+		this.subtypeIndexes = subtypeIndexes;
+	}
+
+	/**
+	 * Loads the RF2 snapshot files found anywhere under the given directory, such as the Snapshot directory of a release.
+	 * The inferred relationships and concrete values are used, stated definitions are held in the OWL axiom refset and are not read.
+	 * @param languageRefsetId language reference set that decides the preferred term used as the display, the fully specified name is used if there is none.
+	 */
+	public static SnomedSnapshot load(Path directory, long languageRefsetId) throws IOException {
+		List<Path> conceptFiles = findFiles(directory, CONCEPT_FILE_PREFIX);
+		if (conceptFiles.isEmpty()) {
+			throw new IOException(String.format("No %s file found in %s.", CONCEPT_FILE_PREFIX, directory));
+		}
+		Builder builder = new Builder();
+		for (Path file : conceptFiles) {
+			readRows(file, 5, columns -> {
+				// id, effectiveTime, active, moduleId, definitionStatusId
+				if ("1".equals(columns[2])) {
+					builder.addConcept(parseSctid(columns[0]), DEFINED.equals(columns[4]));
+				}
+			});
+		}
+		builder.sortConcepts();
+
+		for (Path file : findFiles(directory, LANGUAGE_REFSET_FILE_PREFIX)) {
+			String refsetId = Long.toString(languageRefsetId);
+			readRows(file, 7, columns -> {
+				// id, effectiveTime, active, moduleId, refsetId, referencedComponentId, acceptabilityId
+				if ("1".equals(columns[2]) && refsetId.equals(columns[4]) && PREFERRED.equals(columns[6])) {
+					builder.addPreferredDescription(parseSctid(columns[5]));
+				}
+			});
+		}
+		builder.sortPreferredDescriptions();
+
+		for (Path file : findFiles(directory, DESCRIPTION_FILE_PREFIX)) {
+			readRows(file, 8, columns -> {
+				// id, effectiveTime, active, moduleId, conceptId, languageCode, typeId, term, caseSignificanceId
+				if ("1".equals(columns[2])) {
+					builder.addDescription(parseSctid(columns[0]), parseSctid(columns[4]), FSN.equals(columns[6]), SYNONYM.equals(columns[6]), columns[7]);
+				}
+			});
+		}
+
+		for (Path file : findFiles(directory, INFERRED_RELATIONSHIP_FILE_PREFIX)) {
+			readRows(file, 9, columns -> {
+				// id, effectiveTime, active, moduleId, sourceId, destinationId, relationshipGroup, typeId, characteristicTypeId, modifierId
+				if ("1".equals(columns[2]) && !ADDITIONAL_RELATIONSHIP.equals(columns[8])) {
+					builder.addRelationship(parseSctid(columns[4]), parseSctid(columns[7]), Integer.parseInt(columns[6]), parseSctid(columns[5]), null);
+				}
+			});
+		}
+		for (Path file : findFiles(directory, CONCRETE_VALUE_FILE_PREFIX)) {
+			readRows(file, 9, columns -> {
+				// id, effectiveTime, active, moduleId, sourceId, value, relationshipGroup, typeId, characteristicTypeId, modifierId
+				if ("1".equals(columns[2]) && !ADDITIONAL_RELATIONSHIP.equals(columns[8])) {
+					builder.addRelationship(parseSctid(columns[4]), parseSctid(columns[7]), Integer.parseInt(columns[6]), NOT_AN_SCTID, columns[5]);
+				}
+			});
+		}
+		return builder.build();
+	}
+
+	private static List<Path> findFiles(Path directory, String prefix) throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			return files.filter(file -> file.getFileName().toString().startsWith(prefix) && Files.isRegularFile(file))
+					.sorted()
+					.toList();
+		}
+	}
+
+	private static void readRows(Path file, int minimumColumns, Consumer<String[]> rowConsumer) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			// Skip the header
+			String line = reader.readLine();
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				String[] columns = line.split("\t");
+				if (columns.length < minimumColumns) {
+					throw new IOException(String.format("Unexpected number of columns in RF2 file %s: %s", file, line));
+				}
+				rowConsumer.accept(columns);
+			}
+		}
+	}
+
+	public boolean contains(long conceptId) {
+		return Arrays.binarySearch(conceptIds, conceptId) >= 0;
+	}
+
+	/**
+	 * @return the preferred term of the concept, or its fully specified name if there is none in the language reference set, null if the concept is not active.
+	 */
+	public String getDisplay(long conceptId) {
+		int i = Arrays.binarySearch(conceptIds, conceptId);
+		return i < 0 ? null : displays[i];
+	}
+
+	/**
+	 * Writes the normal form of the concept in the terse format used by terminology servers, for example
+	 * <code>===763158003:411116001=421026006,{732943007=387517004,1142135004=#500,...}</code>
+	 * where the definition status is followed by the parents, the ungrouped attributes and each attribute group.
+	 * @return the normal form, or null if the concept is not active.
+	 */
+	public String getNormalFormTerse(long conceptId) {
+		int i = Arrays.binarySearch(conceptIds, conceptId);
+		if (i < 0) {
+			return null;
+		}
+		StringBuilder normalForm = new StringBuilder(defined.get(i) ? "===" : "<<<");
+		int start = offsets[i];
+		int end = offsets[i + 1];
+		boolean first = true;
+		for (int r = start; r < end; r++) {
+			if (typeIds[r] == IS_A) {
+				if (!first) {
+					normalForm.append(" + ");
+				}
+				normalForm.append(destinationIds[r]);
+				first = false;
+			}
+		}
+		boolean colon = false;
+		int currentGroup = 0;
+		for (int r = start; r < end; r++) {
+			if (typeIds[r] == IS_A) {
+				continue;
+			}
+			if (!colon) {
+				normalForm.append(':');
+				colon = true;
+			} else if (groups[r] != 0 && groups[r] == currentGroup) {
+				normalForm.append(',');
+			} else {
+				if (currentGroup != 0) {
+					normalForm.append('}');
+				}
+				normalForm.append(',');
+			}
+			if (groups[r] != 0 && groups[r] != currentGroup) {
+				normalForm.append('{');
+			}
+			currentGroup = groups[r];
+			normalForm.append(typeIds[r]).append('=');
+			long destinationId = destinationIds[r];
+			if (destinationId < 0) {
+				normalForm.append(concreteValues[(int) -(destinationId + 1)]);
+			} else {
+				normalForm.append(destinationId);
+			}
+		}
+		if (currentGroup != 0) {
+			normalForm.append('}');
+		}
+		return normalForm.toString();
+	}
+
+	@Override
+	public int getConceptCount() {
+		return conceptIds.length;
+	}
+
+	/**
+	 * Walks the same IS-A relationships as {@link #addRelatives}, but holds the visited ancestors in a small set
+	 * rather than a bitset over all concepts, because this runs for each SNOMED CT code in a request.
+	 */
+	@Override
+	public boolean anyAncestorOrSelf(long conceptId, LongPredicate predicate) {
+		if (predicate.test(conceptId)) {
+			return true;
+		}
+		int current = indexOf(conceptId);
+		if (current < 0) {
+			return false;
+		}
+		Set<Integer> visited = new HashSet<>();
+		int[] stack = new int[16];
+		int stackSize = 0;
+		while (true) {
+			for (int r = offsets[current]; r < offsets[current + 1]; r++) {
+				int supertype;
+				if (typeIds[r] == IS_A && (supertype = indexOf(destinationIds[r])) >= 0 && visited.add(supertype)) {
+					if (predicate.test(conceptIds[supertype])) {
+						return true;
+					}
+					if (stackSize == stack.length) {
+						stack = Arrays.copyOf(stack, stackSize * 2);
+					}
+					stack[stackSize++] = supertype;
+				}
+			}
+			if (stackSize == 0) {
+				return false;
+			}
+			current = stack[--stackSize];
+		}
+	}
+
+	/**
+	 * @return the index of the concept, or a negative number if the concept is not active.
+	 */
+	int indexOf(long conceptId) {
+		return Arrays.binarySearch(conceptIds, conceptId);
+	}
+
+	long conceptIdAt(int index) {
+		return conceptIds[index];
+	}
+
+	/**
+	 * Sets the index of each descendant of the concept, or of each ancestor, in the result.
+	 * @param directOnly true to set the children or parents only.
+	 */
+	void addRelatives(int index, boolean descendants, boolean directOnly, BitSet result) {
+		int[] stack = new int[16];
+		int stackSize = 0;
+		int current = index;
+		while (true) {
+			if (descendants) {
+				for (int p = subtypeOffsets[current]; p < subtypeOffsets[current + 1]; p++) {
+					int subtype = subtypeIndexes[p];
+					if (!result.get(subtype)) {
+						result.set(subtype);
+						if (stackSize == stack.length) {
+							stack = Arrays.copyOf(stack, stackSize * 2);
+						}
+						stack[stackSize++] = subtype;
+					}
+				}
+			} else {
+				for (int r = offsets[current]; r < offsets[current + 1]; r++) {
+					int supertype;
+					if (typeIds[r] == IS_A && (supertype = indexOf(destinationIds[r])) >= 0 && !result.get(supertype)) {
+						result.set(supertype);
+						if (stackSize == stack.length) {
+							stack = Arrays.copyOf(stack, stackSize * 2);
+						}
+						stack[stackSize++] = supertype;
+					}
+				}
+			}
+			if (directOnly || stackSize == 0) {
+				return;
+			}
+			current = stack[--stackSize];
+		}
+	}
+
+	/**
+	 * @param group the relationship group the attribute must be in, or -1 for any group.
+	 * @return true if the concept has an attribute of one of the types with a destination in the values,
+	 * or with a destination that is not in the values if negated.
+	 */
+	boolean hasAttribute(int index, BitSet types, BitSet values, boolean negated, int group) {
+		for (int r = offsets[index]; r < offsets[index + 1]; r++) {
+			if ((group == -1 || groups[r] == group) && destinationIds[r] >= 0) {
+				int type = indexOf(typeIds[r]);
+				if (type >= 0 && types.get(type)) {
+					int destination = indexOf(destinationIds[r]);
+					if ((destination >= 0 && values.get(destination)) != negated) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the distinct relationship groups of the concept, in order.
+	 */
+	int[] getGroups(int index) {
+		int[] conceptGroups = new int[offsets[index + 1] - offsets[index]];
+		int count = 0;
+		for (int r = offsets[index]; r < offsets[index + 1]; r++) {
+			if (count == 0 || conceptGroups[count - 1] != groups[r]) {
+				conceptGroups[count++] = groups[r];
+			}
+		}
+		return Arrays.copyOf(conceptGroups, count);
+	}
+
+	public int getRelationshipCount() {
+		return typeIds.length;
+	}
+
+	static final class Builder {
+
+		private long[] conceptIds = new long[1024];
+		private long[] definedIds = new long[1024];
+		private int conceptCount;
+		private int definedCount;
+
+		private long[] preferredDescriptionIds = new long[1024];
+		private int preferredDescriptionCount;
+
+		private String[] preferredTerms;
+		private String[] fullySpecifiedNames;
+
+		private long[] sourceIds = new long[1024];
+		private long[] typeIds = new long[1024];
+		private int[] groups = new int[1024];
+		private long[] destinationIds = new long[1024];
+		private int relationshipCount;
+		private final List<String> concreteValues = new ArrayList<>();
+
+		Builder addConcept(long conceptId, boolean defined) {
+			if (conceptId == NOT_AN_SCTID) {
+				return this;
+			}
+			if (conceptCount == conceptIds.length) {
+				conceptIds = Arrays.copyOf(conceptIds, conceptCount * 2);
+			}
+			conceptIds[conceptCount++] = conceptId;
+			if (defined) {
+				if (definedCount == definedIds.length) {
+					definedIds = Arrays.copyOf(definedIds, definedCount * 2);
+				}
+				definedIds[definedCount++] = conceptId;
+			}
+			return this;
+		}
+
+		void sortConcepts() {
+			conceptIds = Arrays.copyOf(conceptIds, conceptCount);
+			Arrays.sort(conceptIds);
+			preferredTerms = new String[conceptCount];
+			fullySpecifiedNames = new String[conceptCount];
+		}
+
+		Builder addPreferredDescription(long descriptionId) {
+			if (preferredDescriptionCount == preferredDescriptionIds.length) {
+				preferredDescriptionIds = Arrays.copyOf(preferredDescriptionIds, preferredDescriptionCount * 2);
+			}
+			preferredDescriptionIds[preferredDescriptionCount++] = descriptionId;
+			return this;
+		}
+
+		void sortPreferredDescriptions() {
+			preferredDescriptionIds = Arrays.copyOf(preferredDescriptionIds, preferredDescriptionCount);
+			Arrays.sort(preferredDescriptionIds);
+		}
+
+		Builder addDescription(long descriptionId, long conceptId, boolean fullySpecifiedName, boolean synonym, String term) {
+			int i = Arrays.binarySearch(conceptIds, conceptId);
+			if (i < 0) {
+				return this;
+			}
+			if (fullySpecifiedName) {
+				fullySpecifiedNames[i] = term;
+			} else if (synonym && Arrays.binarySearch(preferredDescriptionIds, descriptionId) >= 0) {
+				preferredTerms[i] = term;
+			}
+			return this;
+		}
+
+		/**
+		 * @param concreteValue the value of a concrete relationship, for example #500, or null for a relationship to a concept.
+		 */
+		Builder addRelationship(long sourceId, long typeId, int group, long destinationId, String concreteValue) {
+			if (sourceId == NOT_AN_SCTID || typeId == NOT_AN_SCTID || (concreteValue == null && destinationId == NOT_AN_SCTID)) {
+				return this;
+			}
+			if (relationshipCount == sourceIds.length) {
+				int length = relationshipCount * 2;
+				sourceIds = Arrays.copyOf(sourceIds, length);
+				typeIds = Arrays.copyOf(typeIds, length);
+				groups = Arrays.copyOf(groups, length);
+				destinationIds = Arrays.copyOf(destinationIds, length);
+			}
+			if (concreteValue != null) {
+				concreteValues.add(concreteValue);
+				destinationId = -concreteValues.size();
+			}
+			sourceIds[relationshipCount] = sourceId;
+			typeIds[relationshipCount] = typeId;
+			groups[relationshipCount] = group;
+			destinationIds[relationshipCount] = destinationId;
+			relationshipCount++;
+			return this;
+		}
+
+		SnomedSnapshot build() {
+			BitSet defined = new BitSet(conceptCount);
+			for (int i = 0; i < definedCount; i++) {
+				defined.set(Arrays.binarySearch(conceptIds, definedIds[i]));
+			}
+			String[] displays = new String[conceptCount];
+			for (int i = 0; i < conceptCount; i++) {
+				displays[i] = preferredTerms[i] != null ? preferredTerms[i] : fullySpecifiedNames[i];
+			}
+
+			// Count the relationships of each active concept then fill them
+			int[] conceptIndexes = new int[relationshipCount];
+			int[] offsets = new int[conceptCount + 1];
+			int total = 0;
+			for (int r = 0; r < relationshipCount; r++) {
+				int i = Arrays.binarySearch(conceptIds, sourceIds[r]);
+				conceptIndexes[r] = i;
+				if (i >= 0) {
+					offsets[i + 1]++;
+					total++;
+				}
+			}
+			for (int i = 0; i < conceptCount; i++) {
+				offsets[i + 1] += offsets[i];
+			}
+			long[] sortedTypeIds = new long[total];
+			int[] sortedGroups = new int[total];
+			long[] sortedDestinationIds = new long[total];
+			int[] next = Arrays.copyOf(offsets, conceptCount);
+			for (int r = 0; r < relationshipCount; r++) {
+				int i = conceptIndexes[r];
+				if (i >= 0) {
+					int p = next[i]++;
+					sortedTypeIds[p] = typeIds[r];
+					sortedGroups[p] = groups[r];
+					sortedDestinationIds[p] = destinationIds[r];
+				}
+			}
+			// Order the few relationships of each concept by group, type and destination
+			for (int i = 0; i < conceptCount; i++) {
+				for (int p = offsets[i] + 1; p < offsets[i + 1]; p++) {
+					long typeId = sortedTypeIds[p];
+					int group = sortedGroups[p];
+					long destinationId = sortedDestinationIds[p];
+					int q = p - 1;
+					while (q >= offsets[i] && compare(sortedGroups[q], sortedTypeIds[q], sortedDestinationIds[q], group, typeId, destinationId) > 0) {
+						sortedTypeIds[q + 1] = sortedTypeIds[q];
+						sortedGroups[q + 1] = sortedGroups[q];
+						sortedDestinationIds[q + 1] = sortedDestinationIds[q];
+						q--;
+					}
+					sortedTypeIds[q + 1] = typeId;
+					sortedGroups[q + 1] = group;
+					sortedDestinationIds[q + 1] = destinationId;
+				}
+			}
+
+			// Index the subtypes of each concept from the IS-A relationships
+			int[] subtypeOffsets = new int[conceptCount + 1];
+			int[] supertypeIndexes = new int[total];
+			for (int i = 0; i < conceptCount; i++) {
+				for (int p = offsets[i]; p < offsets[i + 1]; p++) {
+					supertypeIndexes[p] = sortedTypeIds[p] == IS_A && sortedDestinationIds[p] >= 0 ? Arrays.binarySearch(conceptIds, sortedDestinationIds[p]) : -1;
+					if (supertypeIndexes[p] >= 0) {
+						subtypeOffsets[supertypeIndexes[p] + 1]++;
+					}
+				}
+			}
+			for (int i = 0; i < conceptCount; i++) {
+				subtypeOffsets[i + 1] += subtypeOffsets[i];
+			}
+			int[] subtypeIndexes = new int[subtypeOffsets[conceptCount]];
+			next = Arrays.copyOf(subtypeOffsets, conceptCount);
+			for (int i = 0; i < conceptCount; i++) {
+				for (int p = offsets[i]; p < offsets[i + 1]; p++) {
+					if (supertypeIndexes[p] >= 0) {
+						subtypeIndexes[next[supertypeIndexes[p]]++] = i;
+					}
+				}
+			}
+			return new SnomedSnapshot(conceptIds, defined, displays, offsets, sortedTypeIds, sortedGroups, sortedDestinationIds, concreteValues.toArray(new String[0]),
+					subtypeOffsets, subtypeIndexes);
+		}
+
+		private static int compare(int groupA, long typeA, long destinationA, int groupB, long typeB, long destinationB) {
+			if (groupA != groupB) {
+				return Integer.compare(groupA, groupB);
+			}
+			if (typeA != typeB) {
+				return Long.compare(typeA, typeB);
+			}
+			return Long.compare(destinationA, destinationB);
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package org.snomed.cdsservice.model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.LongPredicate;
+
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.NOT_AN_SCTID;
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.parseSctid;
+
+/**
+ * Immutable SNOMED CT IS-A hierarchy, held as the supertypes of each concept, for subsumption matching without a full snapshot.
+ * Concepts are held in a sorted array of longs with the supertypes of each stored contiguously in a shared array.
+ * <p>
+ * Can be loaded from either an RF2 relationship snapshot file, from which only active IS-A relationships are used,
+ * or from a two column ancestor table of subtypeId and supertypeId, such as a transitive closure file.
+ */
+public class SnomedSupertypeHierarchy implements SnomedHierarchy {
+
+	private static final String IS_A = "116680003";
+
+	private static final String RF2_RELATIONSHIP_HEADER = "id\teffectiveTime\tactive\tmoduleId\tsourceId\tdestinationId\trelationshipGroup\ttypeId";
+
+	private final long[] conceptIds;
+	private final int[] offsets;
+	private final long[] supertypeIds;
+
+	private SnomedSupertypeHierarchy(long[] conceptIds, int[] offsets, long[] supertypeIds) {
+		this.conceptIds = conceptIds;
+		this.offsets = offsets;
+		this.supertypeIds = supertypeIds;
+	}
+
+	public static SnomedSupertypeHierarchy load(Path path) throws IOException {
+		Builder builder = new Builder();
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String header = reader.readLine();
+			if (header == null) {
+				throw new IOException("Hierarchy file is empty.");
+			}
+			boolean rf2 = header.startsWith(RF2_RELATIONSHIP_HEADER);
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				String[] columns = line.split("\t");
+				if (rf2) {
+					// Active IS-A relationships only
+					if (columns.length > 7 && "1".equals(columns[2]) && IS_A.equals(columns[7])) {
+						builder.add(parseSctid(columns[4]), parseSctid(columns[5]));
+					}
+				} else if (columns.length > 1) {
+					builder.add(parseSctid(columns[0]), parseSctid(columns[1]));
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	@Override
+	public boolean anyAncestorOrSelf(long conceptId, LongPredicate predicate) {
+		if (predicate.test(conceptId)) {
+			return true;
+		}
+		Set<Long> visited = null;
+		long[] stack = null;
+		int stackSize = 0;
+		long current = conceptId;
+		while (true) {
+			int i = Arrays.binarySearch(conceptIds, current);
+			if (i >= 0) {
+				for (int p = offsets[i]; p < offsets[i + 1]; p++) {
+					long supertypeId = supertypeIds[p];
+					if (visited == null) {
+						visited = new HashSet<>();
+						visited.add(conceptId);
+						stack = new long[16];
+					}
+					if (visited.add(supertypeId)) {
+						if (predicate.test(supertypeId)) {
+							return true;
+						}
+						if (stackSize == stack.length) {
+							stack = Arrays.copyOf(stack, stackSize * 2);
+						}
+						stack[stackSize++] = supertypeId;
+					}
+				}
+			}
+			if (stackSize == 0) {
+				return false;
+			}
+			current = stack[--stackSize];
+		}
+	}
+
+	@Override
+	public int getConceptCount() {
+		return conceptIds.length;
+	}
+
+	static final class Builder {
+
+		private long[] pairs = new long[1024];
+		private int pairCount;
+
+		Builder add(long subtypeId, long supertypeId) {
+			if (subtypeId == NOT_AN_SCTID || supertypeId == NOT_AN_SCTID || subtypeId == supertypeId) {
+				return this;
+			}
+			if (pairCount * 2 == pairs.length) {
+				pairs = Arrays.copyOf(pairs, pairs.length * 2);
+			}
+			pairs[pairCount * 2] = subtypeId;
+			pairs[pairCount * 2 + 1] = supertypeId;
+			pairCount++;
+			return this;
+		}
+
+		SnomedSupertypeHierarchy build() {
+			long[] subtypes = new long[pairCount];
+			for (int i = 0; i < pairCount; i++) {
+				subtypes[i] = pairs[i * 2];
+			}
+			Arrays.sort(subtypes);
+			int conceptCount = 0;
+			for (int i = 0; i < subtypes.length; i++) {
+				if (i == 0 || subtypes[i] != subtypes[i - 1]) {
+					subtypes[conceptCount++] = subtypes[i];
+				}
+			}
+			long[] conceptIds = Arrays.copyOf(subtypes, conceptCount);
+
+			// Count the supertypes of each concept then fill them
+			int[] offsets = new int[conceptCount + 1];
+			for (int i = 0; i < pairCount; i++) {
+				offsets[Arrays.binarySearch(conceptIds, pairs[i * 2]) + 1]++;
+			}
+			for (int i = 0; i < conceptCount; i++) {
+				offsets[i + 1] += offsets[i];
+			}
+			long[] supertypeIds = new long[pairCount];
+			int[] next = Arrays.copyOf(offsets, conceptCount);
+			for (int i = 0; i < pairCount; i++) {
+				supertypeIds[next[Arrays.binarySearch(conceptIds, pairs[i * 2])]++] = pairs[i * 2 + 1];
+			}
+			return new SnomedSupertypeHierarchy(conceptIds, offsets, supertypeIds);
+		}
+	}
+}
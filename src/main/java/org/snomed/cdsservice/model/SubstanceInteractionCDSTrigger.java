@@ -0,0 +1,38 @@
+package org.snomed.cdsservice.model;
+
+import org.hl7.fhir.r4.model.Coding;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Interaction between two substances. Draft medications match a side when one of their basis of strength substances is in the substance value set.
+ */
+public class SubstanceInteractionCDSTrigger extends CDSTrigger {
+
+    private final CardTextTemplate summaryTemplate;
+    private final CardTextTemplate detailTemplate;
+
+    public SubstanceInteractionCDSTrigger(String substance1Label, CodeSet substance1Codes, String substance2Label, CodeSet substance2Codes, CDSCard card) {
+        super(substance1Label, substance1Codes, substance2Label, substance2Codes, card);
+        Map<String, String> rulePlaceholders = Map.of("RuleSubstance1", substance1Label, "RuleSubstance2", substance2Label);
+        summaryTemplate = CardTextTemplate.compile(card.getSummary(), rulePlaceholders, "ActualMedication1", "ActualMedication2");
+        detailTemplate = CardTextTemplate.compile(card.getDetail(), rulePlaceholders, "ActualMedication1", "ActualMedication2");
+    }
+
+    @Override
+    protected CDSCard renderCard(Collection<Coding> medication1Intersection, Collection<Coding> medication2Intersection) {
+        if (!medication2Intersection.isEmpty() && !medication1Intersection.isEmpty()) {
+            String actualMedication1 = toHumanReadable(medication1Intersection);
+            String actualMedication2 = toHumanReadable(medication2Intersection);
+            CDSCard cardInstance = createCardInstance(render(summaryTemplate, actualMedication1, actualMedication2), render(detailTemplate, actualMedication1, actualMedication2));
+
+            addReferenceMedicationToCDSCard(medication1Intersection, cardInstance);
+            addReferenceMedicationToCDSCard(medication2Intersection, cardInstance);
+
+            return cardInstance;
+        } else {
+            return null;
+        }
+    }
+}
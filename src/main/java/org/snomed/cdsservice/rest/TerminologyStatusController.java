@@ -0,0 +1,44 @@
+package org.snomed.cdsservice.rest;
+
+import org.snomed.cdsservice.service.medication.TerminologyWarmUpService;
+import org.snomed.cdsservice.service.medication.TerminologyWarmUpStatus;
+import org.snomed.cdsservice.service.tsclient.FHIRTerminologyServerClient;
+import org.snomed.cdsservice.service.tsclient.TerminologyCacheStats;
+import org.snomed.cdsservice.service.tsclient.TerminologyHttpStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping(path = "terminology")
+public class TerminologyStatusController {
+
+	@Autowired
+	private FHIRTerminologyServerClient tsClient;
+
+	@Autowired
+	private TerminologyWarmUpService warmUpService;
+
+	@GetMapping("cache-stats")
+	@ResponseBody
+	public List<TerminologyCacheStats> getCacheStats() {
+		return tsClient.getCacheStats();
+	}
+
+	@GetMapping("http-stats")
+	@ResponseBody
+	public TerminologyHttpStats getHttpStats() {
+		return tsClient.getHttpStats();
+	}
+
+	@GetMapping("warm-up")
+	@ResponseBody
+	public TerminologyWarmUpStatus getWarmUpStatus() {
+		return warmUpService.getStatus();
+	}
+
+}
@@ -0,0 +1,81 @@
+package org.snomed.cdsservice.service.hierarchy;
+
+import com.google.common.base.Strings;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.cdsservice.model.SnomedHierarchy;
+import org.snomed.cdsservice.service.ServiceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static java.lang.String.format;
+
+@Service
+public class SnomedHierarchyService {
+
+	public static final String EXPANSION_MATCHING = "expansion";
+	public static final String SUBSUMPTION_MATCHING = "subsumption";
+
+	// 'expansion' matches patient codes against the full expansion of each rule value set,
+	// 'subsumption' matches patient codes against the rule roots using the local snapshot, or the hierarchy file if there is no snapshot.
+	@Value("${rules.matching-mode:expansion}")
+	private String matchingMode;
+
+	@Value("${snomed.hierarchy.file:}")
+	private String hierarchyFile;
+
+	@Autowired
+	private SnomedSnapshotService snapshotService;
+
+	private SnomedHierarchy hierarchy;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() throws ServiceException {
+		if (EXPANSION_MATCHING.equalsIgnoreCase(matchingMode)) {
+			return;
+		}
+		if (!SUBSUMPTION_MATCHING.equalsIgnoreCase(matchingMode)) {
+			throw new ServiceException(format("Unknown rule matching mode '%s', expected '%s' or '%s'.", matchingMode, EXPANSION_MATCHING, SUBSUMPTION_MATCHING));
+		}
+		if (snapshotService.getSnapshot() != null) {
+			if (!Strings.isNullOrEmpty(hierarchyFile)) {
+				logger.warn("SNOMED CT hierarchy file {} is not used, the hierarchy of the SNOMED CT snapshot is used instead.", hierarchyFile);
+			}
+			hierarchy = snapshotService.getSnapshot();
+			logger.info("Using the hierarchy of the SNOMED CT snapshot for subsumption matching");
+			return;
+		}
+		if (Strings.isNullOrEmpty(hierarchyFile)) {
+			throw new ServiceException("Subsumption matching requires a SNOMED CT snapshot or hierarchy file, set snomed.snapshot.directory or snomed.hierarchy.file.");
+		}
+		logger.info("Loading SNOMED CT hierarchy from {}", hierarchyFile);
+		try {
+			hierarchy = SnomedHierarchy.load(Path.of(hierarchyFile));
+		} catch (IOException e) {
+			throw new ServiceException(format("Failed to read SNOMED CT hierarchy file %s", hierarchyFile), e);
+		}
+		logger.info("Loaded SNOMED CT hierarchy with {} concepts", hierarchy.getConceptCount());
+	}
+
+	public boolean isSubsumptionMatching() {
+		return hierarchy != null;
+	}
+
+	/**
+	 * @return the hierarchy used for subsumption matching, or null if rules are matched using value set expansions.
+	 */
+	public SnomedHierarchy getHierarchy() {
+		return hierarchy;
+	}
+
+	public void setHierarchy(SnomedHierarchy hierarchy) {
+		this.hierarchy = hierarchy;
+	}
+}
@@ -0,0 +1,104 @@
+package org.snomed.cdsservice.service.hierarchy;
+
+import com.google.common.base.Strings;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.cdsservice.model.CodeSet;
+import org.snomed.cdsservice.model.SnomedEclEvaluator;
+import org.snomed.cdsservice.model.SnomedSnapshot;
+import org.snomed.cdsservice.service.ServiceException;
+import org.snomed.cdsservice.service.tsclient.ConceptParameters;
+import org.snomed.cdsservice.util.SnomedValueSetUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static java.lang.String.format;
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.NOT_AN_SCTID;
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.isSnomedSystem;
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.parseSctid;
+
+/**
+ * Answers SNOMED CT lookups and ECL expansions from a local RF2 snapshot, so that they do not need the terminology server.
+ */
+@Service
+public class SnomedSnapshotService {
+
+	@Value("${snomed.snapshot.directory:}")
+	private String snapshotDirectory;
+
+	@Value("${snomed.snapshot.language-refset:900000000000509007}")
+	private long languageRefsetId;
+
+	private SnomedSnapshot snapshot;
+	private SnomedEclEvaluator eclEvaluator;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() throws ServiceException {
+		if (Strings.isNullOrEmpty(snapshotDirectory)) {
+			return;
+		}
+		logger.info("Loading SNOMED CT snapshot from {}", snapshotDirectory);
+		long start = System.currentTimeMillis();
+		try {
+			setSnapshot(SnomedSnapshot.load(Path.of(snapshotDirectory), languageRefsetId));
+		} catch (IOException | RuntimeException e) {
+			throw new ServiceException(format("Failed to read SNOMED CT snapshot from %s", snapshotDirectory), e);
+		}
+		logger.info("Loaded SNOMED CT snapshot with {} concepts and {} inferred relationships in {} seconds", snapshot.getConceptCount(), snapshot.getRelationshipCount(),
+				(System.currentTimeMillis() - start) / 1000);
+	}
+
+	/**
+	 * @return the lookup of the code, or null if there is no snapshot, the code is not SNOMED CT or the concept is not active in the snapshot.
+	 */
+	public ConceptParameters lookup(String codeSystem, String code) {
+		if (snapshot == null || !isSnomedSystem(codeSystem)) {
+			return null;
+		}
+		long conceptId = parseSctid(code);
+		if (conceptId == NOT_AN_SCTID || !snapshot.contains(conceptId)) {
+			return null;
+		}
+		// The snapshot does not say which edition version it is, results are not kept in the disk cache so the version is not needed
+		return new ConceptParameters(code, snapshot.getDisplay(conceptId), snapshot.getNormalFormTerse(conceptId), null);
+	}
+
+	/**
+	 * Expands a SNOMED CT implicit ValueSet by evaluating its ECL against the snapshot.
+	 * @return the codes, or null if there is no snapshot, the ValueSet is not an 'isa' or 'ecl' SNOMED CT implicit ValueSet,
+	 * or its ECL is not supported by the local evaluator, in which case it should be expanded by the terminology server.
+	 */
+	public CodeSet expand(String valueSetURI) {
+		if (eclEvaluator == null) {
+			return null;
+		}
+		String ecl = SnomedValueSetUtil.getECL(valueSetURI);
+		if (ecl == null) {
+			return null;
+		}
+		try {
+			return eclEvaluator.evaluate(ecl);
+		} catch (IllegalArgumentException e) {
+			logger.info("ECL '{}' can not be evaluated locally, it will be expanded by the terminology server. {}", ecl, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * @return the local snapshot, or null if none is configured.
+	 */
+	public SnomedSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	public void setSnapshot(SnomedSnapshot snapshot) {
+		this.snapshot = snapshot;
+		eclEvaluator = snapshot != null ? new SnomedEclEvaluator(snapshot) : null;
+	}
+}
@@ -1,7 +1,6 @@
 package org.snomed.cdsservice.service.medication;
 
 import com.google.common.base.Strings;
-import org.hl7.fhir.r4.model.Coding;
 import org.hl7.fhir.utilities.CSVReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,18 +8,18 @@ import org.snomed.cdsservice.model.CDSCard;
 import org.snomed.cdsservice.model.CDSIndicator;
 import org.snomed.cdsservice.model.CDSSource;
 import org.snomed.cdsservice.model.CDSTrigger;
+import org.snomed.cdsservice.model.CodeSet;
 import org.snomed.cdsservice.model.MedicationInterationCDSTrigger;
 import org.snomed.cdsservice.service.ServiceException;
-import org.snomed.cdsservice.service.tsclient.FHIRTerminologyServerClient;
-import org.snomed.cdsservice.util.SnomedValueSetUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.FileInputStream;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class MedicationCombinationRuleLoaderService {
@@ -33,11 +32,13 @@ public class MedicationCombinationRuleLoaderService {
 	private String tsvPath;
 
 	@Autowired
-	private FHIRTerminologyServerClient tsClient;
+	private TriggerCodesService triggerCodesService;
 
 
 	public List<CDSTrigger> loadTriggers() throws ServiceException {
 		List<CDSTrigger> triggers = new ArrayList<>();
+		// Rows repeat the same codes, rows with the same code share one value set
+		Map<String, CodeSet> triggerCodes = new HashMap<>();
 		try (FileInputStream file = new FileInputStream(tsvPath)) {
 			CSVReader csvReader = new CSVReader(file);
 			csvReader.setDelimiter(TAB_DELIMITER);
@@ -82,10 +83,10 @@ public class MedicationCombinationRuleLoaderService {
 				}
 
 				CDSCard cdsCard = new CDSCard(uuid, cardSummary, cardDetail, CDSIndicator.valueOf(cardIndicator), new CDSSource(source, sourceLink), null, null, CONTRAINDICATION_ALERT_TYPE);
-				Collection<Coding> medication1Codings = tsClient.expandValueSet(SnomedValueSetUtil.getSNOMEDValueSetURI(medication1SnomedCode));
-				Collection<Coding> medication2Codings = tsClient.expandValueSet(SnomedValueSetUtil.getSNOMEDValueSetURI(medication2SnomedCode));
+				CodeSet medication1Codes = triggerCodes.computeIfAbsent(medication1SnomedCode, triggerCodesService::getTriggerCodes);
+				CodeSet medication2Codes = triggerCodes.computeIfAbsent(medication2SnomedCode, triggerCodesService::getTriggerCodes);
 				logger.info("Created trigger {} / {}", medication1Label, medication2Label);
-				triggers.add(new MedicationInterationCDSTrigger(medication1Label, medication1Codings, medication2Label, medication2Codings, cdsCard));
+				triggers.add(new MedicationInterationCDSTrigger(medication1Label, medication1Codes, medication2Label, medication2Codes, cdsCard));
 
 				rowNumber++;
 			}
@@ -1,7 +1,6 @@
 package org.snomed.cdsservice.service.medication;
 
 import com.google.common.base.Strings;
-import org.hl7.fhir.r4.model.Coding;
 import org.hl7.fhir.utilities.CSVReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,18 +8,18 @@ import org.snomed.cdsservice.model.CDSCard;
 import org.snomed.cdsservice.model.CDSIndicator;
 import org.snomed.cdsservice.model.CDSSource;
 import org.snomed.cdsservice.model.CDSTrigger;
+import org.snomed.cdsservice.model.CodeSet;
 import org.snomed.cdsservice.model.MedicationConditionCDSTrigger;
 import org.snomed.cdsservice.service.ServiceException;
-import org.snomed.cdsservice.service.tsclient.FHIRTerminologyServerClient;
-import org.snomed.cdsservice.util.SnomedValueSetUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.FileInputStream;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.snomed.cdsservice.service.medication.MedicationCombinationRuleLoaderService.TAB_DELIMITER;
 
@@ -32,12 +31,14 @@ public class MedicationConditionRuleLoaderService {
 	private String tsvPath;
 
 	@Autowired
-	private FHIRTerminologyServerClient tsClient;
+	private TriggerCodesService triggerCodesService;
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	public List<CDSTrigger> loadTriggers() throws ServiceException {
 		List<CDSTrigger> triggers = new ArrayList<>();
+		// Rows repeat the same codes, rows with the same code share one value set
+		Map<String, CodeSet> triggerCodes = new HashMap<>();
 		try (FileInputStream file = new FileInputStream(tsvPath)) {
 			CSVReader csvReader = new CSVReader(file);
 			csvReader.setDelimiter(TAB_DELIMITER);
@@ -82,10 +83,10 @@ public class MedicationConditionRuleLoaderService {
 				}
 
 				CDSCard cdsCard = new CDSCard(uuid, cardSummary, cardDetail, CDSIndicator.valueOf(cardIndicator), new CDSSource(source, sourceLink), null, null, CONTRAINDICATION_ALERT_TYPE);
-				Collection<Coding> medicationCodings = tsClient.expandValueSet(SnomedValueSetUtil.getSNOMEDValueSetURI(medicationSnomedCode));
-				Collection<Coding> conditionCodings = tsClient.expandValueSet(SnomedValueSetUtil.getSNOMEDValueSetURI(conditionSnomedCode));
+				CodeSet medicationCodes = triggerCodes.computeIfAbsent(medicationSnomedCode, triggerCodesService::getTriggerCodes);
+				CodeSet conditionCodes = triggerCodes.computeIfAbsent(conditionSnomedCode, triggerCodesService::getTriggerCodes);
 				logger.info("Created trigger {} / {}", medicationLabel, conditionLabel);
-				triggers.add(new MedicationConditionCDSTrigger(medicationLabel, medicationCodings, conditionLabel, conditionCodings, cdsCard));
+				triggers.add(new MedicationConditionCDSTrigger(medicationLabel, medicationCodes, conditionLabel, conditionCodes, cdsCard));
 
 				rowNumber++;
 			}
@@ -9,16 +9,22 @@ import org.snomed.cdsservice.model.CDSCard;
 import org.snomed.cdsservice.model.CDSCoding;
 import org.snomed.cdsservice.model.CDSReference;
 import org.snomed.cdsservice.model.CDSTrigger;
+import org.snomed.cdsservice.model.CDSTriggerIndex;
+import org.snomed.cdsservice.model.CodeBloomFilter;
+import org.snomed.cdsservice.model.CodeSet;
 import org.snomed.cdsservice.rest.pojo.CDSRequest;
 import org.snomed.cdsservice.service.*;
+import org.snomed.cdsservice.service.hierarchy.SnomedHierarchyService;
 import org.snomed.cdsservice.service.medication.dose.SnomedMedicationDefinedDailyDoseService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.*;
-import java.util.function.Consumer;
-import java.util.function.Function;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -34,12 +40,33 @@ public class MedicationOrderSelectCDSService extends CDSService {
 	@Autowired
 	private MedicationCombinationRuleLoaderService medicationRuleLoaderService;
 
+	@Autowired
+	private SubstanceInteractionRuleLoaderService substanceRuleLoaderService;
+
+	@Autowired
+	private MedicationSubstanceService medicationSubstanceService;
+
 	@Autowired
 	private SnomedMedicationDefinedDailyDoseService definedDailyDoseService;
 
-	private List<CDSTrigger> medicationOrderSelectTriggers;
+	@Autowired
+	private SnomedHierarchyService hierarchyService;
+
+	@Autowired
+	private ExecutorService cdsStageExecutor;
+
+	@Value("${rules.parallel-evaluation-threshold:2048}")
+	private int parallelEvaluationThreshold;
+
+	private CDSTriggerIndex medicationOrderSelectTriggerIndex;
 
-	private List<CDSTrigger> drugDrugInteractionTriggers;
+	private CDSTriggerIndex drugDrugInteractionTriggerIndex;
+
+	// Matched on the substances of each draft medication rather than the medication codes
+	private CDSTriggerIndex substanceInteractionTriggerIndex;
+
+	// Every code in any trigger medication value set, used to skip the triggers for requests that cannot match
+	private CodeBloomFilter triggerCodeFilter;
 
 	public MedicationOrderSelectCDSService() {
 		super("medication-order-select");
@@ -51,8 +78,10 @@ public class MedicationOrderSelectCDSService extends CDSService {
 
 	@PostConstruct
 	public void init() throws ServiceException {
-		medicationOrderSelectTriggers = ruleLoaderService.loadTriggers();
-		drugDrugInteractionTriggers = medicationRuleLoaderService.loadTriggers();
+		medicationOrderSelectTriggerIndex = createTriggerIndex(ruleLoaderService.loadTriggers());
+		drugDrugInteractionTriggerIndex = createTriggerIndex(medicationRuleLoaderService.loadTriggers());
+		substanceInteractionTriggerIndex = createSubstanceTriggerIndex(substanceRuleLoaderService.loadTriggers());
+		updateTriggerCodeFilter();
 	}
 
 	@Override
@@ -69,68 +98,93 @@ public class MedicationOrderSelectCDSService extends CDSService {
 		Set<Coding> activeDiagnosesCodings = getCodings(activeDiagnoses.stream().map(Condition::getCode));
 		Set<Coding> draftMedicationOrderCodings = getCodings(medicationRequests.stream().map(MedicationRequest::getMedicationCodeableConcept));
 
+		// The dose and substance stages may block on terminology server lookups, so they run alongside the in memory trigger stages
+		CompletableFuture<List<CDSCard>> doseCardsFuture = CompletableFuture.supplyAsync(() -> definedDailyDoseService.checkMedications(medicationRequests), cdsStageExecutor);
+		// Substance triggers match the substances of the medications, which the filter cannot rule out without looking them up
+		CompletableFuture<List<CDSCard>> substanceInteractionCardsFuture = substanceInteractionTriggerIndex.getTriggers().isEmpty() ?
+				CompletableFuture.completedFuture(Collections.emptyList()) :
+				CompletableFuture.supplyAsync(() -> substanceInteractionTriggerIndex.createRelevantCards(draftMedicationOrderCodings, draftMedicationOrderCodings), cdsStageExecutor);
+
+		List<CDSCard> conditionCards = Collections.emptyList();
+		List<CDSCard> interactionCards = Collections.emptyList();
+		// Every trigger requires a draft medication match, if no draft medication code is in any trigger there are no trigger cards
+		if (triggerCodeFilter.mightContainAny(draftMedicationOrderCodings, hierarchyService.getHierarchy())) {
+			conditionCards = medicationOrderSelectTriggerIndex.createRelevantCards(activeDiagnosesCodings, draftMedicationOrderCodings);
+			interactionCards = drugDrugInteractionTriggerIndex.createRelevantCards(draftMedicationOrderCodings, draftMedicationOrderCodings);
+		}
+		List<CDSCard> substanceInteractionCards = join(substanceInteractionCardsFuture);
+
 		List<CDSCard> cards = new ArrayList<>();
-		for (CDSTrigger trigger : medicationOrderSelectTriggers) {
-			CDSCard card = trigger.createRelevantCard(activeDiagnosesCodings, draftMedicationOrderCodings);
-			if (card != null) {
-				addCodesFromOtherCodingSystemsForDraftMedications(card.getReferenceMedications(), medicationRequests);
-				addCodesFromOtherCodingSystemsForConditions(card.getReferenceConditions(), activeDiagnoses);
+		if (!conditionCards.isEmpty() || !interactionCards.isEmpty() || !substanceInteractionCards.isEmpty()) {
+			Map<String, Map<String, List<CDSCoding>>> medicationCodingsIndex = getResourceCodingsIndex(medicationRequests.stream().map(MedicationRequest::getMedicationCodeableConcept));
+			Map<String, Map<String, List<CDSCoding>>> conditionCodingsIndex = conditionCards.isEmpty() ? Collections.emptyMap() :
+					getResourceCodingsIndex(activeDiagnoses.stream().map(Condition::getCode));
+			for (CDSCard card : conditionCards) {
+				addCodesFromOtherCodingSystems(card.getReferenceMedications(), medicationCodingsIndex);
+				addCodesFromOtherCodingSystems(card.getReferenceConditions(), conditionCodingsIndex);
 				cards.add(card);
 			}
-		}
-
-		drugDrugInteractionTriggers.forEach(trigger -> {
-			CDSCard card = trigger.createRelevantCard(draftMedicationOrderCodings, draftMedicationOrderCodings);
-			if (card != null) {
-				addCodesFromOtherCodingSystemsForDraftMedications(card.getReferenceMedications(), medicationRequests);
+			for (CDSCard card : interactionCards) {
+				addCodesFromOtherCodingSystems(card.getReferenceMedications(), medicationCodingsIndex);
 				cards.add(card);
 			}
-		});
+			for (CDSCard card : substanceInteractionCards) {
+				addCodesFromOtherCodingSystems(card.getReferenceMedications(), medicationCodingsIndex);
+				cards.add(card);
+			}
+		}
 
-		cards.addAll(definedDailyDoseService.checkMedications(medicationRequests));
+		cards.addAll(join(doseCardsFuture));
 
 		return cards;
 	}
 
-	private void addCodesFromOtherCodingSystemsForConditions(List<CDSReference> referenceConditions, List<Condition> activeDiagnoses) {
-		referenceConditions.forEach(referenceCondition-> {
-					CDSCoding cdsCoding = referenceCondition.getCoding().get(0);
-					Optional<Condition> optionalCondition = activeDiagnoses.stream().filter(condition -> {
-						List<Coding> codingList = condition.getCode().getCoding();
-						Optional<Coding> optionalCoding = codingList.stream().filter(coding -> coding.getCode().equals(cdsCoding.getCode()) && coding.getSystem().equals(cdsCoding.getSystem())).findFirst();
-						return optionalCoding.isPresent();
-					}).findFirst();
-					optionalCondition.ifPresent(getCDSReferenceConditionConsumer(referenceCondition));
-				}
-		);
-	}
-
-	private void addCodesFromOtherCodingSystemsForDraftMedications(List<CDSReference> referenceMedications, List<MedicationRequest> draftMedicationOrders) {
-		referenceMedications.forEach(referenceMedication -> {
-			CDSCoding cdsCoding = referenceMedication.getCoding().get(0);
-			Optional<MedicationRequest> optionalMedicationRequest = draftMedicationOrders.stream().filter(medicationRequest -> {
-				List<Coding> codingList = medicationRequest.getMedicationCodeableConcept().getCoding();
-				Optional<Coding> optionalCoding = codingList.stream().filter(coding -> coding.getCode().equals(cdsCoding.getCode()) && coding.getSystem().equals(cdsCoding.getSystem())).findFirst();
-				return optionalCoding.isPresent();
-			}).findFirst();
-			optionalMedicationRequest.ifPresent(getCDSReferenceMedicationReqquestConsumer(referenceMedication));
-		});
-
-	}
-
-	@NotNull
-	private Consumer<Condition> getCDSReferenceConditionConsumer(CDSReference reference) {
-		return condition -> reference.setCoding(condition.getCode().getCoding().stream().map(getCodingCDSCodingFunction()).collect(Collectors.toList()));
+	/**
+	 * Waits for a stage, rethrowing its exception as thrown by the stage so that request errors keep their status.
+	 */
+	private static List<CDSCard> join(CompletableFuture<List<CDSCard>> stage) {
+		try {
+			return stage.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw e;
+		}
 	}
 
-	@NotNull
-	private Consumer<MedicationRequest> getCDSReferenceMedicationReqquestConsumer(CDSReference reference) {
-		return medicationRequest -> reference.setCoding(medicationRequest.getMedicationCodeableConcept().getCoding().stream().map(getCodingCDSCodingFunction()).collect(Collectors.toList()));
+	/**
+	 * Replaces the coding of each reference with all codings of the first resource containing it, to include codes from other coding systems.
+	 * Each reference is given its own copy of the list, so that changing one card does not change another.
+	 */
+	private void addCodesFromOtherCodingSystems(List<CDSReference> references, Map<String, Map<String, List<CDSCoding>>> resourceCodingsIndex) {
+		for (CDSReference reference : references) {
+			CDSCoding cdsCoding = reference.getCoding().get(0);
+			List<CDSCoding> resourceCodings = resourceCodingsIndex.getOrDefault(cdsCoding.getSystem(), Collections.emptyMap()).get(cdsCoding.getCode());
+			if (resourceCodings != null) {
+				reference.setCoding(new ArrayList<>(resourceCodings));
+			}
+		}
 	}
 
+	/**
+	 * Indexes the codings of each resource by system and code, for the first resource containing each code.
+	 * The CDSCoding list of each resource is created once, it is immutable and copied into each reference to it.
+	 */
 	@NotNull
-	private Function<Coding, CDSCoding> getCodingCDSCodingFunction() {
-		return coding -> new CDSCoding(coding.getSystem(), coding.getCode(), coding.getDisplay());
+	private static Map<String, Map<String, List<CDSCoding>>> getResourceCodingsIndex(Stream<CodeableConcept> codeableConceptStream) {
+		Map<String, Map<String, List<CDSCoding>>> index = new HashMap<>();
+		codeableConceptStream.forEach(codeableConcept -> {
+			List<CDSCoding> cdsCodings = codeableConcept.getCoding().stream()
+					.map(coding -> new CDSCoding(coding.getSystem(), coding.getCode(), coding.getDisplay()))
+					.toList();
+			for (Coding coding : codeableConcept.getCoding()) {
+				if (coding.getSystem() != null && coding.getCode() != null) {
+					index.computeIfAbsent(coding.getSystem(), system -> new HashMap<>()).putIfAbsent(coding.getCode(), cdsCodings);
+				}
+			}
+		});
+		return index;
 	}
 
 	@NotNull
@@ -154,7 +208,48 @@ public class MedicationOrderSelectCDSService extends CDSService {
 		return resources;
 	}
 
+	private CDSTriggerIndex createTriggerIndex(List<CDSTrigger> triggers) {
+		CDSTriggerIndex triggerIndex = new CDSTriggerIndex(triggers, hierarchyService.getHierarchy());
+		triggerIndex.setParallelEvaluationThreshold(parallelEvaluationThreshold);
+		return triggerIndex;
+	}
+
+	private CDSTriggerIndex createSubstanceTriggerIndex(List<CDSTrigger> triggers) {
+		CDSTriggerIndex triggerIndex = new CDSTriggerIndex(triggers, medicationSubstanceService.getSubstanceExpander());
+		triggerIndex.setParallelEvaluationThreshold(parallelEvaluationThreshold);
+		return triggerIndex;
+	}
+
+	private void updateTriggerCodeFilter() {
+		// Only the medication side, the condition or second medication value sets can not make a trigger fire on their own
+		List<CodeSet> triggerCodes = new ArrayList<>(medicationOrderSelectTriggerIndex.getMedicationValueSets());
+		triggerCodes.addAll(drugDrugInteractionTriggerIndex.getMedicationValueSets());
+		triggerCodeFilter = CodeBloomFilter.of(triggerCodes);
+	}
+
+	/**
+	 * @return the medications in any medication-condition or medication-medication rule.
+	 */
+	public CodeSet getTriggerMedicationCodes() {
+		CodeSet.Builder codes = CodeSet.builder();
+		for (CDSTrigger trigger : medicationOrderSelectTriggerIndex.getTriggers()) {
+			codes.addAll(trigger.getMedicationCodes());
+		}
+		drugDrugInteractionTriggerIndex.getValueSets().forEach(codes::addAll);
+		return codes.build();
+	}
+
 	public void setMedicationOrderSelectTriggers(List<CDSTrigger> medicationOrderSelectTriggers) {
-		this.medicationOrderSelectTriggers = medicationOrderSelectTriggers;
+		this.medicationOrderSelectTriggerIndex = createTriggerIndex(medicationOrderSelectTriggers);
+		updateTriggerCodeFilter();
+	}
+
+	public void setDrugDrugInteractionTriggers(List<CDSTrigger> drugDrugInteractionTriggers) {
+		this.drugDrugInteractionTriggerIndex = createTriggerIndex(drugDrugInteractionTriggers);
+		updateTriggerCodeFilter();
+	}
+
+	public void setSubstanceInteractionTriggers(List<CDSTrigger> substanceInteractionTriggers) {
+		this.substanceInteractionTriggerIndex = createSubstanceTriggerIndex(substanceInteractionTriggers);
 	}
 }
@@ -0,0 +1,103 @@
+package org.snomed.cdsservice.service.medication;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.cdsservice.model.SnomedCodeExpander;
+import org.snomed.cdsservice.model.SnomedHierarchy;
+import org.snomed.cdsservice.service.hierarchy.SnomedHierarchyService;
+import org.snomed.cdsservice.service.tsclient.ConceptParameters;
+import org.snomed.cdsservice.service.tsclient.FHIRTerminologyServerClient;
+import org.snomed.cdsservice.service.tsclient.SnomedConceptNormalForm;
+import org.snomed.cdsservice.service.tsclient.TerminologyCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.snomed.cdsservice.service.medication.dose.SnomedMedicationDefinedDailyDoseService.ATTRIBUTE_HAS_BASIS_OF_STRENGTH_SUBSTANCE;
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.NOT_AN_SCTID;
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.SNOMEDCT_SYSTEM;
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.parseSctid;
+
+/**
+ * Resolves medicinal products to the basis of strength substances in their normal form, for substance level interaction triggers.
+ */
+@Service
+public class MedicationSubstanceService {
+
+	private static final long[] NO_SUBSTANCES = new long[0];
+
+	@Autowired
+	private FHIRTerminologyServerClient tsClient;
+
+	@Autowired
+	private SnomedHierarchyService hierarchyService;
+
+	@Value("${fhir.terminology-server.lookup-cache.maximum-size:100000}")
+	private long maximumSize;
+
+	@Value("${fhir.terminology-server.cache.time-to-live:7d}")
+	private Duration timeToLive;
+
+	// Product -> sorted basis of strength substances, dropped with the lookups they come from when the edition version changes
+	private TerminologyCache<Long, long[]> productSubstances;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		productSubstances = new TerminologyCache<>("product-substances", maximumSize, substances -> 1, timeToLive);
+		tsClient.addVersionChangeListener(productSubstances::invalidateAll);
+	}
+
+	/**
+	 * @return the basis of strength substances of the product, empty if the product has none or could not be looked up.
+	 */
+	public long[] getBasisOfStrengthSubstances(long productId) {
+		try {
+			// Lookup failures are not cached so that the product is retried on the next request
+			return TerminologyCache.join(productSubstances.getAsync(productId,
+					id -> CompletableFuture.completedFuture(lookupBasisOfStrengthSubstances(id))));
+		} catch (RuntimeException e) {
+			logger.debug("Failed to look up substances of medication {}, substance interactions will not be checked for it.", productId, e);
+			return NO_SUBSTANCES;
+		}
+	}
+
+	/**
+	 * Expands each medication in a request to its basis of strength substances, and to their ancestors when subsumption matching is enabled.
+	 */
+	public SnomedCodeExpander getSubstanceExpander() {
+		return (productId, consumer) -> {
+			SnomedHierarchy hierarchy = hierarchyService.getHierarchy();
+			for (long substance : getBasisOfStrengthSubstances(productId)) {
+				if (hierarchy != null) {
+					hierarchy.forEachAncestorOrSelf(substance, id -> consumer.accept(id, id != substance));
+				} else {
+					consumer.accept(substance, false);
+				}
+			}
+		};
+	}
+
+	private long[] lookupBasisOfStrengthSubstances(long productId) {
+		ConceptParameters conceptParameters = tsClient.lookup(SNOMEDCT_SYSTEM, Long.toString(productId));
+		if (conceptParameters == null) {
+			return NO_SUBSTANCES;
+		}
+		SnomedConceptNormalForm normalForm = conceptParameters.getNormalForm();
+		if (normalForm == null) {
+			return NO_SUBSTANCES;
+		}
+		return normalForm.getAttributeGroups().stream()
+				.map(attributeGroup -> attributeGroup.get(ATTRIBUTE_HAS_BASIS_OF_STRENGTH_SUBSTANCE))
+				.mapToLong(substance -> substance != null ? parseSctid(substance) : NOT_AN_SCTID)
+				.filter(substance -> substance != NOT_AN_SCTID)
+				.sorted()
+				.distinct()
+				.toArray();
+	}
+}
@@ -0,0 +1,103 @@
+package org.snomed.cdsservice.service.medication;
+
+import com.google.common.base.Strings;
+import org.hl7.fhir.utilities.CSVReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.cdsservice.model.CDSCard;
+import org.snomed.cdsservice.model.CDSIndicator;
+import org.snomed.cdsservice.model.CDSSource;
+import org.snomed.cdsservice.model.CDSTrigger;
+import org.snomed.cdsservice.model.CodeSet;
+import org.snomed.cdsservice.model.SubstanceInteractionCDSTrigger;
+import org.snomed.cdsservice.service.ServiceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.snomed.cdsservice.service.medication.MedicationCombinationRuleLoaderService.TAB_DELIMITER;
+
+@Service
+public class SubstanceInteractionRuleLoaderService {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	private static final String CONTRAINDICATION_ALERT_TYPE = "Contraindication";
+
+	@Value("${rules.substance-substance.tsv:}")
+	private String tsvPath;
+
+	@Autowired
+	private TriggerCodesService triggerCodesService;
+
+
+	public List<CDSTrigger> loadTriggers() throws ServiceException {
+		List<CDSTrigger> triggers = new ArrayList<>();
+		if (Strings.isNullOrEmpty(tsvPath)) {
+			logger.info("No substance interaction rules configured.");
+			return triggers;
+		}
+		// Rows repeat the same codes, rows with the same code share one value set
+		Map<String, CodeSet> triggerCodes = new HashMap<>();
+		try (FileInputStream file = new FileInputStream(tsvPath)) {
+			CSVReader csvReader = new CSVReader(file);
+			csvReader.setDelimiter(TAB_DELIMITER);
+			String[] expectedHeadings = new String[]{
+					"UUID",
+					"Substance1",
+					"Substance1 SNOMED Code",
+					"Substance2",
+					"Substance2 SNOMED Code",
+					"Card Indicator",
+					"Card Summary",
+					"Card Detail",
+					"Source",
+					"Source Link"
+			};
+
+			csvReader.readHeaders();
+			int rowNumber = 1;
+			while (csvReader.line()) {
+				String uuid = csvReader.cell(expectedHeadings[0]);
+				String substance1Label = csvReader.cell(expectedHeadings[1]);
+				String substance1SnomedCode = csvReader.cell(expectedHeadings[2]);
+				String substance2Label = csvReader.cell(expectedHeadings[3]);
+				String substance2SnomedCode = csvReader.cell(expectedHeadings[4]);
+				String cardIndicator = csvReader.cell(expectedHeadings[5]);
+				String cardSummary = csvReader.cell(expectedHeadings[6]);
+				String cardDetail = csvReader.cell(expectedHeadings[7]);
+				String source = csvReader.cell(expectedHeadings[8]);
+				String sourceLink = csvReader.cell(expectedHeadings[9]);
+
+				if (Strings.isNullOrEmpty(substance1SnomedCode) || Strings.isNullOrEmpty(substance2SnomedCode) || Strings.isNullOrEmpty(source)) {
+					logger.info("Ignoring row {}, substance1SnomedCode {} substance2SnomedCode {} source {} ", rowNumber, substance1SnomedCode, substance2SnomedCode, source);
+					continue;
+				}
+
+				if (substance1SnomedCode.contains("|") && !substance1SnomedCode.startsWith("ECL=")) {
+					substance1SnomedCode = substance1SnomedCode.substring(substance1SnomedCode.indexOf("|")).trim();
+				}
+
+				if (substance2SnomedCode.contains("|") && !substance2SnomedCode.startsWith("ECL=")) {
+					substance2SnomedCode = substance2SnomedCode.substring(substance2SnomedCode.indexOf("|")).trim();
+				}
+
+				CDSCard cdsCard = new CDSCard(uuid, cardSummary, cardDetail, CDSIndicator.valueOf(cardIndicator), new CDSSource(source, sourceLink), null, null, CONTRAINDICATION_ALERT_TYPE);
+				CodeSet substance1Codes = triggerCodes.computeIfAbsent(substance1SnomedCode, triggerCodesService::getTriggerCodes);
+				CodeSet substance2Codes = triggerCodes.computeIfAbsent(substance2SnomedCode, triggerCodesService::getTriggerCodes);
+				logger.info("Created trigger {} / {}", substance1Label, substance2Label);
+				triggers.add(new SubstanceInteractionCDSTrigger(substance1Label, substance1Codes, substance2Label, substance2Codes, cdsCard));
+
+				rowNumber++;
+			}
+		} catch (Exception e) {
+			throw new ServiceException("Failed to read CDS substance interaction rules from tab separated file", e);
+		}
+		return triggers;
+	}
+}
@@ -0,0 +1,133 @@
+package org.snomed.cdsservice.service.medication;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.cdsservice.model.CodeSet;
+import org.snomed.cdsservice.service.medication.dose.SnomedMedicationDefinedDailyDoseService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Looks up the medications in the rules in the background after startup, so that the first requests for them do not wait for the terminology server.
+ * Each batch of medications is prefetched as the dose check would, which also looks up their substances and units.
+ */
+@Service
+public class TerminologyWarmUpService {
+
+	public enum State {
+		DISABLED, PENDING, RUNNING, COMPLETE, FAILED
+	}
+
+	@Autowired
+	private MedicationOrderSelectCDSService medicationOrderSelectCDSService;
+
+	@Autowired
+	private SnomedMedicationDefinedDailyDoseService definedDailyDoseService;
+
+	@Value("${fhir.terminology-server.warm-up.enabled:false}")
+	private boolean enabled;
+
+	@Value("${fhir.terminology-server.warm-up.batch-size:50}")
+	private int batchSize;
+
+	@Value("${fhir.terminology-server.warm-up.parallel-batches:2}")
+	private int parallelBatches;
+
+	@Value("${fhir.terminology-server.warm-up.maximum-codes:50000}")
+	private int maximumCodes;
+
+	private volatile State state = State.PENDING;
+	private volatile int totalCodes;
+	private final AtomicInteger completedCodes = new AtomicInteger();
+	private final AtomicInteger failedBatches = new AtomicInteger();
+	private volatile long startMillis;
+	private volatile long endMillis;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		if (!enabled) {
+			state = State.DISABLED;
+			return;
+		}
+		Thread thread = new Thread(this::warmUp, "terminology-warm-up");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Runs the warm up on the calling thread.
+	 */
+	public void warmUp() {
+		startMillis = System.currentTimeMillis();
+		endMillis = 0;
+		completedCodes.set(0);
+		failedBatches.set(0);
+		state = State.RUNNING;
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelBatches), runnable -> {
+			Thread thread = new Thread(runnable, "terminology-warm-up-batch");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<String> codes = new ArrayList<>();
+			CodeSet medicationCodes = medicationOrderSelectCDSService.getTriggerMedicationCodes();
+			medicationCodes.forEachSnomedId(sctid -> {
+				if (codes.size() < maximumCodes) {
+					codes.add(Long.toString(sctid));
+				}
+			});
+			if (codes.size() < medicationCodes.size()) {
+				logger.info("Rules contain {} medications, warming up the first {}.", medicationCodes.size(), codes.size());
+			}
+			totalCodes = codes.size();
+			logger.info("Warming up terminology lookups for {} medications.", totalCodes);
+
+			List<Future<?>> batches = new ArrayList<>();
+			int size = Math.max(1, batchSize);
+			for (int start = 0; start < codes.size(); start += size) {
+				List<String> batch = codes.subList(start, Math.min(start + size, codes.size()));
+				batches.add(executor.submit(() -> {
+					try {
+						definedDailyDoseService.prefetchLookups(batch);
+					} catch (RuntimeException e) {
+						failedBatches.incrementAndGet();
+						logger.debug("Failed to warm up terminology lookups for a batch of {} medications.", batch.size(), e);
+					}
+					completedCodes.addAndGet(batch.size());
+				}));
+			}
+			for (Future<?> batch : batches) {
+				batch.get();
+			}
+			state = State.COMPLETE;
+			logger.info("Terminology warm up of {} medications completed in {} seconds, {} batches failed.", totalCodes,
+					(System.currentTimeMillis() - startMillis) / 1000, failedBatches.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			state = State.FAILED;
+		} catch (Exception e) {
+			state = State.FAILED;
+			logger.warn("Terminology warm up failed.", e);
+		} finally {
+			endMillis = System.currentTimeMillis();
+			executor.shutdownNow();
+		}
+	}
+
+	public TerminologyWarmUpStatus getStatus() {
+		long elapsedMillis = startMillis == 0 ? 0 : (endMillis != 0 ? endMillis : System.currentTimeMillis()) - startMillis;
+		return new TerminologyWarmUpStatus(state, totalCodes, completedCodes.get(), failedBatches.get(), elapsedMillis);
+	}
+}
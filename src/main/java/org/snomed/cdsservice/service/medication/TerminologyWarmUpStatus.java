@@ -0,0 +1,49 @@
+package org.snomed.cdsservice.service.medication;
+
+public class TerminologyWarmUpStatus {
+
+	private final TerminologyWarmUpService.State state;
+	private final int totalCodes;
+	private final int completedCodes;
+	private final int failedBatches;
+	private final long elapsedMillis;
+
+	public TerminologyWarmUpStatus(TerminologyWarmUpService.State state, int totalCodes, int completedCodes, int failedBatches, long elapsedMillis) {
+		this.state = state;
+		this.totalCodes = totalCodes;
+		this.completedCodes = completedCodes;
+		this.failedBatches = failedBatches;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * @return true once warm up has finished, or if it is disabled, so that requests no longer wait for the terminology server to look up rule medications.
+	 */
+	public boolean isReady() {
+		return state != TerminologyWarmUpService.State.PENDING && state != TerminologyWarmUpService.State.RUNNING;
+	}
+
+	public TerminologyWarmUpService.State getState() {
+		return state;
+	}
+
+	public int getTotalCodes() {
+		return totalCodes;
+	}
+
+	public int getCompletedCodes() {
+		return completedCodes;
+	}
+
+	public double getProgress() {
+		return totalCodes == 0 ? (isReady() ? 1.0 : 0.0) : (double) completedCodes / totalCodes;
+	}
+
+	public int getFailedBatches() {
+		return failedBatches;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+}
@@ -0,0 +1,38 @@
+package org.snomed.cdsservice.service.medication;
+
+import org.snomed.cdsservice.model.CodeSet;
+import org.snomed.cdsservice.service.hierarchy.SnomedHierarchyService;
+import org.snomed.cdsservice.service.tsclient.FHIRTerminologyServerClient;
+import org.snomed.cdsservice.util.SnomedValueSetUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.NOT_AN_SCTID;
+import static org.snomed.cdsservice.util.SnomedIdentifierUtil.parseSctid;
+
+@Service
+public class TriggerCodesService {
+
+	@Autowired
+	private FHIRTerminologyServerClient tsClient;
+
+	@Autowired
+	private SnomedHierarchyService hierarchyService;
+
+	/**
+	 * Gets the codes of a rule value set.
+	 * When subsumption matching is enabled a single concept is held as just the root, because descendants are matched using the local hierarchy,
+	 * otherwise the concept and all descendants are expanded. ECL rules are always expanded and matched exactly,
+	 * so that MINUS and refinements are not undone by matching the ancestors of a patient code.
+	 * @param snomedCodeOrECL This must be either a SNOMED CT code, or an ECL statement prefixed with 'ECL='.
+	 */
+	public CodeSet getTriggerCodes(String snomedCodeOrECL) {
+		if (hierarchyService.isSubsumptionMatching() && !snomedCodeOrECL.startsWith("ECL=")) {
+			long sctid = parseSctid(snomedCodeOrECL.trim());
+			if (sctid != NOT_AN_SCTID) {
+				return CodeSet.builder().matchDescendants().addSnomedId(sctid).build();
+			}
+		}
+		return tsClient.expandValueSet(SnomedValueSetUtil.getSNOMEDValueSetURI(snomedCodeOrECL));
+	}
+}
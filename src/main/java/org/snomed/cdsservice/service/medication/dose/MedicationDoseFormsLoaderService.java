@@ -58,7 +58,7 @@ public class MedicationDoseFormsLoaderService {
                 String routeOfAdministrationLabel = columns[1];
                 String valueSetURI = SnomedValueSetUtil.getSnomedECLValueSetURI(snomedDoseFormQuery);
                 try {
-                    Set<String> manufacturedDoseFormSnomedCodes = tsClient.expandValueSet(valueSetURI).stream().map(Coding::getCode).collect(Collectors.toSet());
+                    Set<String> manufacturedDoseFormSnomedCodes = tsClient.expandValueSet(valueSetURI).toCodings().stream().map(Coding::getCode).collect(Collectors.toSet());
                     logger.info("Mapping {} SNOMED CT Manufactured dose forms to ATC route of administration '{}'.", manufacturedDoseFormSnomedCodes.size(), atcAdministrationCode);
                     mapEntries.add(new ManyToOneMapEntry(manufacturedDoseFormSnomedCodes, atcAdministrationCode, mapPriority, routeOfAdministrationLabel));
                 } catch (RestClientException e) {
@@ -33,6 +33,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.io.BufferedReader;
@@ -41,11 +45,14 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -55,18 +62,23 @@ import static java.lang.String.format;
 public class SnomedMedicationDefinedDailyDoseService {
 
     public static final String SNOMEDCT_SYSTEM = "http://snomed.info/sct";
-    public static final String ATTRIBUTE_HAS_MANUFACTURED_DOSE_FORM = "411116001";
-    public static final String ATTRIBUTE_HAS_BASIS_OF_STRENGTH_SUBSTANCE = "732943007";
+    public static final long ATTRIBUTE_HAS_MANUFACTURED_DOSE_FORM = 411116001L;
+    public static final long ATTRIBUTE_HAS_BASIS_OF_STRENGTH_SUBSTANCE = 732943007L;
 
-    public static final String ATTRIBUTE_HAS_PRESENTATION_STRENGTH_NUMERATOR_VALUE = "1142135004";
-    public static final String ATTRIBUTE_HAS_PRESENTATION_STRENGTH_NUMERATOR_UNIT = "732945000";
-    public static final String ATTRIBUTE_HAS_PRESENTATION_STRENGTH_DENOMINATOR_VALUE = "1142136003";
-    public static final String ATTRIBUTE_HAS_PRESENTATION_STRENGTH_DENOMINATOR_UNIT = "732947008";
+    public static final long ATTRIBUTE_HAS_PRESENTATION_STRENGTH_NUMERATOR_VALUE = 1142135004L;
+    public static final long ATTRIBUTE_HAS_PRESENTATION_STRENGTH_NUMERATOR_UNIT = 732945000L;
+    public static final long ATTRIBUTE_HAS_PRESENTATION_STRENGTH_DENOMINATOR_VALUE = 1142136003L;
+    public static final long ATTRIBUTE_HAS_PRESENTATION_STRENGTH_DENOMINATOR_UNIT = 732947008L;
 
-    public static final String ATTRIBUTE_HAS_CONCENTRATION_STRENGTH_NUMERATOR_VALUE = "1142138002";
-    public static final String ATTRIBUTE_HAS_CONCENTRATION_STRENGTH_NUMERATOR_UNIT = "733725009";
-    public static final String ATTRIBUTE_HAS_CONCENTRATION_STRENGTH_DENOMINATOR_VALUE = "1142137007";
-    public static final String ATTRIBUTE_HAS_CONCENTRATION_STRENGTH_DENOMINATOR_UNIT = "733722007";
+    public static final long ATTRIBUTE_HAS_CONCENTRATION_STRENGTH_NUMERATOR_VALUE = 1142138002L;
+    public static final long ATTRIBUTE_HAS_CONCENTRATION_STRENGTH_NUMERATOR_UNIT = 733725009L;
+    public static final long ATTRIBUTE_HAS_CONCENTRATION_STRENGTH_DENOMINATOR_VALUE = 1142137007L;
+    public static final long ATTRIBUTE_HAS_CONCENTRATION_STRENGTH_DENOMINATOR_UNIT = 733722007L;
+
+    // Attributes of clinical drugs whose values are looked up while checking doses
+    private static final long[] PREFETCHED_ATTRIBUTES = {ATTRIBUTE_HAS_BASIS_OF_STRENGTH_SUBSTANCE,
+            ATTRIBUTE_HAS_PRESENTATION_STRENGTH_NUMERATOR_UNIT, ATTRIBUTE_HAS_PRESENTATION_STRENGTH_DENOMINATOR_UNIT,
+            ATTRIBUTE_HAS_CONCENTRATION_STRENGTH_NUMERATOR_UNIT, ATTRIBUTE_HAS_CONCENTRATION_STRENGTH_DENOMINATOR_UNIT};
 
     public static final String WARNING = "warning";
     public static final String INFO = "info";
@@ -135,6 +147,7 @@ public class SnomedMedicationDefinedDailyDoseService {
     }
 
     public List<CDSCard> checkMedications(List<MedicationRequest> medicationRequests) {
+        prefetchLookups(medicationRequests);
         List<CDSCard> cards = new ArrayList<>();
         Map<String, AggregatedMedicationsBySubstance> aggregatedMedicationsBySubstanceMap = new HashMap<>();
         for (MedicationRequest medicationRequest : medicationRequests) {
@@ -157,10 +170,15 @@ public class SnomedMedicationDefinedDailyDoseService {
                 ConceptParameters conceptParameters;
                 try {
                      conceptParameters = tsClient.lookup(SNOMEDCT_SYSTEM, snomedMedicationCode);
-                } catch (Exception e) {
+                } catch (HttpClientErrorException e) {
+                    // Only a rejection of the code itself points at the mapping
                     String errorMessage = String.format("Bahmni->SNOMED mapping is misconfigured for medication %s.", snomedMedicationLabel);
                     logger.error(errorMessage);
                     throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, errorMessage, null);
+                } catch (RestClientException e) {
+                    // The terminology server is unavailable, the other cards are still returned without the dose check of this medication
+                    logger.warn("Prescribed dosage could not be validated for {}. Reason: Terminology server unavailable, {}", snomedMedicationLabel, e.getMessage());
+                    continue;
                 }
                 if (conceptParameters == null) {
                     logger.debug("No SNOMED concept found for code {}, ignoring.", snomedMedicationCode);
@@ -202,6 +220,50 @@ public class SnomedMedicationDefinedDailyDoseService {
         return cards;
     }
 
+    /**
+     * Looks up the medications and then their substances and units in two batches, rather than one request per code as they are used.
+     */
+    private void prefetchLookups(List<MedicationRequest> medicationRequests) {
+        List<String> medicationCodes = medicationRequests.stream()
+                .flatMap(medicationRequest -> medicationRequest.getMedicationCodeableConcept().getCoding().stream())
+                .filter(coding -> SNOMEDCT_SYSTEM.equals(coding.getSystem()) && coding.getCode() != null)
+                .map(Coding::getCode)
+                .distinct()
+                .toList();
+        prefetchLookups(medicationCodes);
+    }
+
+    /**
+     * Looks up the SNOMED CT medications, and then their substances and units, so that checking them later needs no terminology server requests.
+     */
+    public void prefetchLookups(Collection<String> medicationCodes) {
+        if (medicationCodes.isEmpty()) {
+            return;
+        }
+        Set<String> attributeCodes = new HashSet<>();
+        for (ConceptParameters conceptParameters : tsClient.lookupAll(SNOMEDCT_SYSTEM, medicationCodes).values()) {
+            if (conceptParameters.getNormalFormTerse() == null) {
+                continue;
+            }
+            try {
+                for (SnomedConceptNormalForm.AttributeGroup attributeGroup : conceptParameters.getNormalForm().getAttributeGroups()) {
+                    for (long attribute : PREFETCHED_ATTRIBUTES) {
+                        String value = attributeGroup.get(attribute);
+                        if (value != null) {
+                            attributeCodes.add(value);
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Reported when the medication is checked
+                logger.debug("Failed to read normal form of {}", conceptParameters.getCode(), e);
+            }
+        }
+        if (!attributeCodes.isEmpty()) {
+            tsClient.lookupAll(SNOMEDCT_SYSTEM, attributeCodes);
+        }
+    }
+
     private Quantity getDoseQuantityFromDosage(Dosage dosage) {
         List<Dosage.DosageDoseAndRateComponent> doseAndRate = dosage.getDoseAndRate();
         ArgumentAssertionUtil.expectNotNull(doseAndRate, "Medication Request doseAndRate");
@@ -262,7 +324,7 @@ public class SnomedMedicationDefinedDailyDoseService {
 
     private void aggregateMedicationsBySubstance(Map<String, AggregatedMedicationsBySubstance> aggregatedMedicationsBySubstanceMap, PrescribedDailyDose prescribedDailyDose, List<Coding> codingList, String snomedMedicationLabel, String atcRouteOfAdministrationCode, String routeOfAdministrationLabel, SnomedConceptNormalForm normalForm, List<CDSCard> cards) {
         // The substances within the clinical drug concepts are contained within attribute groups
-        for (Map<String, String> attributeGroup : normalForm.getAttributeGroups()) {
+        for (SnomedConceptNormalForm.AttributeGroup attributeGroup : normalForm.getAttributeGroups()) {
             String substance = attributeGroup.get(ATTRIBUTE_HAS_BASIS_OF_STRENGTH_SUBSTANCE);
             List<SubstanceDefinedDailyDose> substanceDefinedDailyDoses = substanceDDD.get(substance);
             if (substanceDefinedDailyDoses == null) {
@@ -291,13 +353,13 @@ public class SnomedMedicationDefinedDailyDoseService {
             String denominatorValue = null;
             String denominatorUnit = null;
 
-            if (attributeGroup.containsKey(ATTRIBUTE_HAS_PRESENTATION_STRENGTH_NUMERATOR_VALUE)) {
+            if (attributeGroup.contains(ATTRIBUTE_HAS_PRESENTATION_STRENGTH_NUMERATOR_VALUE)) {
                 strengthValue = attributeGroup.get(ATTRIBUTE_HAS_PRESENTATION_STRENGTH_NUMERATOR_VALUE);
                 strengthUnit = attributeGroup.get(ATTRIBUTE_HAS_PRESENTATION_STRENGTH_NUMERATOR_UNIT);
                 denominatorValue = attributeGroup.get(ATTRIBUTE_HAS_PRESENTATION_STRENGTH_DENOMINATOR_VALUE);
                 denominatorUnit = attributeGroup.get(ATTRIBUTE_HAS_PRESENTATION_STRENGTH_DENOMINATOR_UNIT);
 
-            } else if (attributeGroup.containsKey(ATTRIBUTE_HAS_CONCENTRATION_STRENGTH_NUMERATOR_VALUE)) {
+            } else if (attributeGroup.contains(ATTRIBUTE_HAS_CONCENTRATION_STRENGTH_NUMERATOR_VALUE)) {
                 strengthValue = attributeGroup.get(ATTRIBUTE_HAS_CONCENTRATION_STRENGTH_NUMERATOR_VALUE);
                 strengthUnit = attributeGroup.get(ATTRIBUTE_HAS_CONCENTRATION_STRENGTH_NUMERATOR_UNIT);
                 denominatorValue = attributeGroup.get(ATTRIBUTE_HAS_CONCENTRATION_STRENGTH_DENOMINATOR_VALUE);
@@ -314,7 +376,13 @@ public class SnomedMedicationDefinedDailyDoseService {
             }
             AggregatedMedicationsBySubstance aggregatedMedicationsBySubstance = aggregatedMedicationsBySubstanceMap.get(substance);
             if (aggregatedMedicationsBySubstance == null) {
-                String substanceShortName = getSnomedParameterValue(substance, "display");
+                String substanceShortName;
+                try {
+                    substanceShortName = getSnomedDisplay(substance);
+                } catch (ResourceAccessException | HttpServerErrorException e) {
+                    logger.warn("Prescribed dosage could not be validated for substance {} of {}. Reason: Terminology server unavailable, {}", substance, snomedMedicationLabel, e.getMessage());
+                    continue;
+                }
                 aggregatedMedicationsBySubstance = new AggregatedMedicationsBySubstance(substanceShortName, new ArrayList<>(Collections.singletonList(snomedMedicationLabel)), new ArrayList<>(Collections.singletonList(new CDSReference(getCodings(codingList)))));
                 aggregatedMedicationsBySubstanceMap.put(substance, aggregatedMedicationsBySubstance);
                 aggregatedMedicationsBySubstance.getDosageComparisonByRouteMap().put(atcRouteOfAdministrationCode, new DosageComparisonByRoute(prescribedDailyDoseInUnitOfDDD, substanceDefinedDailyDose, StringUtils.capitalize(routeOfAdministrationLabel.trim())));
@@ -403,8 +471,8 @@ public class SnomedMedicationDefinedDailyDoseService {
         BigDecimal prescribedDoseQuantity = prescribedDailyDose.getQuantity();
         String prescribedDisplayUnit = prescribedDailyDose.getUnit();
 
-        String strengthDisplayUnit = getSnomedParameterValue(strengthUnit, "display");
-        String denominatorDisplayUnit = getSnomedParameterValue(denominatorUnit, "display");
+        String strengthDisplayUnit = getSnomedDisplay(strengthUnit);
+        String denominatorDisplayUnit = getSnomedDisplay(denominatorUnit);
         try {
             BigDecimal prescribedDoseQuantityInUnitOfSubstanceStrength = prescribedDoseQuantity.multiply((new BigDecimal(strengthValue)).divide(new BigDecimal(denominatorValue))).multiply(new BigDecimal(UnitConversion.factorOfConversion(prescribedDisplayUnit, denominatorDisplayUnit)));
             return new PrescribedDailyDose(prescribedDoseQuantityInUnitOfSubstanceStrength, strengthDisplayUnit);
@@ -414,9 +482,9 @@ public class SnomedMedicationDefinedDailyDoseService {
         }
     }
 
-    private String getSnomedParameterValue(String snomedCode, String parameterName) {
+    private String getSnomedDisplay(String snomedCode) {
         ConceptParameters conceptParameters = tsClient.lookup(SNOMEDCT_SYSTEM, snomedCode);
-        return conceptParameters.getParameter(parameterName).getValue().toString();
+        return conceptParameters.getDisplay();
     }
 
     private PrescribedDailyDose getPrescribedDailyDoseInUnitOfDDD(BigDecimal inputStrengthValue, String inputStrengthUnit, String targetStrengthUnit, List<CDSCard> cards, String medicationLabel, List<Coding> codingList) {
@@ -0,0 +1,90 @@
+package org.snomed.cdsservice.service.tsclient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops calling a remote server that keeps failing, so that callers fail straight away rather than each waiting for a timeout.
+ * The circuit opens after a number of consecutive failures. While open every call is refused, once the open time has passed
+ * a single trial call is let through and its outcome closes the circuit or opens it again.
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String name;
+	private final int failureThreshold;
+	private final long openNanos;
+	private final LongSupplier ticker;
+
+	// Guarded by this
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openedNanos;
+	private boolean trialInProgress;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * @param failureThreshold consecutive failures that open the circuit, zero or less to never open it.
+	 * @param openDuration time the circuit stays open before a trial call is let through.
+	 */
+	public CircuitBreaker(String name, int failureThreshold, Duration openDuration) {
+		this(name, failureThreshold, openDuration, System::nanoTime);
+	}
+
+	CircuitBreaker(String name, int failureThreshold, Duration openDuration, LongSupplier ticker) {
+		this.name = name;
+		this.failureThreshold = failureThreshold;
+		this.openNanos = openDuration.toNanos();
+		this.ticker = ticker;
+	}
+
+	/**
+	 * @return true if the call may be made, in which case its outcome must be recorded.
+	 */
+	public synchronized boolean tryAcquire() {
+		if (state == State.CLOSED) {
+			return true;
+		}
+		if (state == State.OPEN && ticker.getAsLong() - openedNanos >= openNanos) {
+			state = State.HALF_OPEN;
+			trialInProgress = false;
+		}
+		if (state == State.HALF_OPEN && !trialInProgress) {
+			trialInProgress = true;
+			return true;
+		}
+		return false;
+	}
+
+	public synchronized void recordSuccess() {
+		if (state != State.CLOSED) {
+			logger.info("Circuit {} closed, calls succeed again.", name);
+		}
+		state = State.CLOSED;
+		consecutiveFailures = 0;
+		trialInProgress = false;
+	}
+
+	public synchronized void recordFailure() {
+		consecutiveFailures++;
+		if (state == State.HALF_OPEN || (state == State.CLOSED && failureThreshold > 0 && consecutiveFailures >= failureThreshold)) {
+			if (state == State.CLOSED) {
+				logger.warn("Circuit {} opened after {} consecutive failures, calls will be refused for {} seconds.", name, consecutiveFailures, openNanos / 1_000_000_000);
+			}
+			state = State.OPEN;
+			openedNanos = ticker.getAsLong();
+			trialInProgress = false;
+		}
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+}
@@ -0,0 +1,299 @@
+package org.snomed.cdsservice.service.tsclient;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.snomed.cdsservice.model.CodeSet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the parts of terminology server responses that this service uses, straight from the JSON stream.
+ * Nothing else in the response is materialised, so a lookup costs a few strings and an expansion page costs nothing per code beyond the code set.
+ */
+public final class FHIRResponseReader {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private FHIRResponseReader() {
+	}
+
+	/**
+	 * Reads a CodeSystem $lookup Parameters response.
+	 */
+	public static ConceptParameters readLookup(InputStream inputStream) throws IOException {
+		try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+			return readLookup(parser);
+		}
+	}
+
+	public static ConceptParameters readLookup(String json) throws IOException {
+		try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+			return readLookup(parser);
+		}
+	}
+
+	/**
+	 * Reads a batch-response Bundle of CodeSystem $lookup responses, in the order of the batch entries.
+	 */
+	public static List<BatchLookupEntry> readBatchLookups(InputStream inputStream) throws IOException {
+		try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+			List<BatchLookupEntry> entries = new ArrayList<>();
+			expectStartObject(parser);
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				JsonToken value = parser.nextToken();
+				if ("entry".equals(parser.currentName()) && value == JsonToken.START_ARRAY) {
+					while (parser.nextToken() == JsonToken.START_OBJECT) {
+						entries.add(readBatchLookupEntry(parser));
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+			return entries;
+		}
+	}
+
+	/**
+	 * Reads a page of a ValueSet $expand response, adding each code in the expansion to the builder.
+	 */
+	public static ExpansionPage readExpansionPage(InputStream inputStream, CodeSet.Builder codes) throws IOException {
+		try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+			ExpansionPage page = new ExpansionPage();
+			expectStartObject(parser);
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				JsonToken value = parser.nextToken();
+				if ("expansion".equals(parser.currentName()) && value == JsonToken.START_OBJECT) {
+					readExpansion(parser, codes, page);
+				} else {
+					parser.skipChildren();
+				}
+			}
+			return page;
+		}
+	}
+
+	private static ConceptParameters readLookup(JsonParser parser) throws IOException {
+		expectStartObject(parser);
+		return readLookupObject(parser);
+	}
+
+	private static ConceptParameters readLookupObject(JsonParser parser) throws IOException {
+		LookupValues values = new LookupValues();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			JsonToken value = parser.nextToken();
+			if ("parameter".equals(parser.currentName()) && value == JsonToken.START_ARRAY) {
+				while (parser.nextToken() == JsonToken.START_OBJECT) {
+					readParameter(parser, values);
+				}
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return new ConceptParameters(values.code, values.display, values.normalFormTerse, values.version);
+	}
+
+	private static BatchLookupEntry readBatchLookupEntry(JsonParser parser) throws IOException {
+		ConceptParameters conceptParameters = null;
+		String status = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldName = parser.currentName();
+			JsonToken token = parser.nextToken();
+			if ("resource".equals(fieldName) && token == JsonToken.START_OBJECT) {
+				// An OperationOutcome for failed entries, which the status identifies
+				conceptParameters = readLookupObject(parser);
+			} else if ("response".equals(fieldName) && token == JsonToken.START_OBJECT) {
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String responseFieldName = parser.currentName();
+					parser.nextToken();
+					if ("status".equals(responseFieldName)) {
+						status = parser.getValueAsString();
+					} else {
+						parser.skipChildren();
+					}
+				}
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return new BatchLookupEntry(getStatusCode(status), status, conceptParameters);
+	}
+
+	// Bundle entry statuses start with the HTTP status code, for example "200 OK"
+	private static int getStatusCode(String status) {
+		if (status == null || status.length() < 3) {
+			return 0;
+		}
+		try {
+			return Integer.parseInt(status.substring(0, 3));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static void readParameter(JsonParser parser, LookupValues values) throws IOException {
+		String name = null;
+		String value = null;
+		String propertyCode = null;
+		String propertyValue = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldName = parser.currentName();
+			JsonToken token = parser.nextToken();
+			if ("name".equals(fieldName)) {
+				name = parser.getValueAsString();
+			} else if (fieldName.startsWith("value") && token.isScalarValue()) {
+				value = parser.getValueAsString();
+			} else if ("part".equals(fieldName) && token == JsonToken.START_ARRAY) {
+				// Property parameters hold the property code and value as parts, in either order
+				while (parser.nextToken() == JsonToken.START_OBJECT) {
+					String partName = null;
+					String partValue = null;
+					while (parser.nextToken() == JsonToken.FIELD_NAME) {
+						String partFieldName = parser.currentName();
+						JsonToken partToken = parser.nextToken();
+						if ("name".equals(partFieldName)) {
+							partName = parser.getValueAsString();
+						} else if (partFieldName.startsWith("value") && partToken.isScalarValue()) {
+							partValue = parser.getValueAsString();
+						} else {
+							parser.skipChildren();
+						}
+					}
+					if ("code".equals(partName)) {
+						propertyCode = partValue;
+					} else if ("valueString".equals(partName) || "value".equals(partName)) {
+						propertyValue = partValue;
+					}
+				}
+			} else {
+				parser.skipChildren();
+			}
+		}
+		if ("code".equals(name)) {
+			values.code = value;
+		} else if ("display".equals(name)) {
+			values.display = value;
+		} else if ("version".equals(name)) {
+			values.version = value;
+		} else if ("property".equals(name) && "normalFormTerse".equals(propertyCode)) {
+			values.normalFormTerse = propertyValue;
+		}
+	}
+
+	private static void readExpansion(JsonParser parser, CodeSet.Builder codes, ExpansionPage page) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldName = parser.currentName();
+			JsonToken token = parser.nextToken();
+			if ("total".equals(fieldName) && token == JsonToken.VALUE_NUMBER_INT) {
+				page.total = parser.getIntValue();
+			} else if ("parameter".equals(fieldName) && token == JsonToken.START_ARRAY) {
+				readExpansionParameters(parser, page);
+			} else if ("contains".equals(fieldName) && token == JsonToken.START_ARRAY) {
+				readContains(parser, codes, page, true);
+			} else {
+				parser.skipChildren();
+			}
+		}
+	}
+
+	private static void readExpansionParameters(JsonParser parser, ExpansionPage page) throws IOException {
+		while (parser.nextToken() == JsonToken.START_OBJECT) {
+			String name = null;
+			String value = null;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String fieldName = parser.currentName();
+				JsonToken token = parser.nextToken();
+				if ("name".equals(fieldName)) {
+					name = parser.getValueAsString();
+				} else if (fieldName.startsWith("value") && token.isScalarValue()) {
+					value = parser.getValueAsString();
+				} else {
+					parser.skipChildren();
+				}
+			}
+			if ("version".equals(name)) {
+				page.version = value;
+			}
+		}
+	}
+
+	// Paging offsets count the top level entries only, nested entries come with their parent
+	private static void readContains(JsonParser parser, CodeSet.Builder codes, ExpansionPage page, boolean topLevel) throws IOException {
+		while (parser.nextToken() == JsonToken.START_OBJECT) {
+			String system = null;
+			String code = null;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String fieldName = parser.currentName();
+				JsonToken token = parser.nextToken();
+				if ("system".equals(fieldName)) {
+					system = parser.getValueAsString();
+				} else if ("code".equals(fieldName)) {
+					code = parser.getValueAsString();
+				} else if ("contains".equals(fieldName) && token == JsonToken.START_ARRAY) {
+					// Nested entries of a hierarchical expansion
+					readContains(parser, codes, page, false);
+				} else {
+					parser.skipChildren();
+				}
+			}
+			codes.add(system, code);
+			if (topLevel) {
+				page.count++;
+			}
+		}
+	}
+
+	private static void expectStartObject(JsonParser parser) throws IOException {
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			throw new IOException("Terminology server response is not a JSON object.");
+		}
+	}
+
+	private static final class LookupValues {
+		private String code;
+		private String display;
+		private String normalFormTerse;
+		private String version;
+	}
+
+	public record BatchLookupEntry(int statusCode, String status, ConceptParameters conceptParameters) {
+
+		public boolean isSuccessful() {
+			return statusCode >= 200 && statusCode < 300 && conceptParameters != null;
+		}
+	}
+
+	public static final class ExpansionPage {
+
+		private Integer total;
+		private int count;
+		private String version;
+
+		public ExpansionPage() {
+		}
+
+		/**
+		 * @return the total number of codes in the expansion, or null if the server did not report it.
+		 */
+		public Integer getTotal() {
+			return total;
+		}
+
+		/**
+		 * @return the number of top level entries in this page, which the offset of the next page steps by.
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the code system version the expansion used, or null if the server did not report it.
+		 */
+		public String getVersion() {
+			return version;
+		}
+	}
+}
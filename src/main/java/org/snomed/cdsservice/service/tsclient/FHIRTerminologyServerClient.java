@@ -1,83 +1,401 @@
 package org.snomed.cdsservice.service.tsclient;
 
-import ca.uhn.fhir.context.FhirContext;
-import org.hl7.fhir.r4.model.Coding;
-import org.hl7.fhir.r4.model.Parameters;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.snomed.cdsservice.model.CDSCoding;
+import org.snomed.cdsservice.model.CodeSet;
+import org.snomed.cdsservice.service.hierarchy.SnomedSnapshotService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.String.format;
 
 @Service
 public class FHIRTerminologyServerClient {
 
-	private final RestTemplate restTemplate;
-	private final Map<String, ConceptParameters> lookupCache = new HashMap<>();
-	private final Map<String, Collection<Coding>> valueSetCache = new HashMap<>();
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	private static final int EXPAND_PAGE_SIZE = 1000;
+	// Not Found, Method Not Allowed and Not Implemented, the server has no batch endpoint
+	private static final Set<Integer> BATCH_NOT_SUPPORTED_STATUSES = Set.of(404, 405, 501);
+
+	private final TerminologyHttpClient httpClient;
+	// Time allowed for each request, including reading the response
+	private final Duration lookupTimeout;
+	private final Duration expandTimeout;
+	private final TerminologyCache<String, ConceptParameters> lookupCache;
+	// Weighed by the number of codes, rule value sets vary from a few codes to hundreds of thousands
+	private final TerminologyCache<String, CodeSet> valueSetCache;
+	// Lookup cache misses from all request threads, sent together as a batch Bundle. Null when batching is disabled.
+	private final RequestBatcher<LookupRequest, ConceptParameters> lookupBatcher;
+	// Cleared if the server answers that it does not support batch Bundles, after which lookups are sent individually
+	private volatile boolean batchLookupSupported = true;
+	// Pages of an expansion after the first that are requested at the same time
+	private final int expandParallelPages;
+	// Keeps results for the next start, null when disabled
+	private final TerminologyDiskStore diskStore;
+	// Told when results of an earlier edition version are dropped, so that results derived from them can be dropped too
+	private final List<Runnable> versionChangeListeners = new CopyOnWriteArrayList<>();
+
+	// Answers SNOMED CT lookups and ECL expansions without the terminology server when a local snapshot is configured
+	@Autowired(required = false)
+	private SnomedSnapshotService snapshotService;
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
-	public FHIRTerminologyServerClient(@Value("${fhir.terminology-server.url}") String terminologyServerUrl) {
+	public FHIRTerminologyServerClient(@Value("${fhir.terminology-server.url}") String terminologyServerUrl,
+			@Value("${fhir.terminology-server.lookup-cache.maximum-size:100000}") long lookupCacheMaximumSize,
+			@Value("${fhir.terminology-server.value-set-cache.maximum-codes:10000000}") long valueSetCacheMaximumCodes,
+			@Value("${fhir.terminology-server.cache.time-to-live:7d}") Duration cacheTimeToLive,
+			@Value("${fhir.terminology-server.cache.stale-time-to-live:1d}") Duration cacheStaleTimeToLive,
+			@Value("${fhir.terminology-server.lookup-cache.failure-time-to-live:10m}") Duration lookupFailureTimeToLive,
+			@Value("${fhir.terminology-server.lookup-batch.window:5ms}") Duration lookupBatchWindow,
+			@Value("${fhir.terminology-server.lookup-batch.maximum-size:50}") int lookupBatchMaximumSize,
+			@Value("${fhir.terminology-server.expand.parallel-pages:4}") int expandParallelPages,
+			@Value("${fhir.terminology-server.disk-cache.file:}") String diskCacheFile,
+			@Value("${fhir.terminology-server.http.connect-timeout:5s}") Duration connectTimeout,
+			@Value("${fhir.terminology-server.http.lookup-timeout:10s}") Duration lookupTimeout,
+			@Value("${fhir.terminology-server.http.expand-timeout:60s}") Duration expandTimeout,
+			@Value("${fhir.terminology-server.http.maximum-concurrent-requests:32}") int maximumConcurrentRequests,
+			@Value("${fhir.terminology-server.http.reader-threads:8}") int readerThreads,
+			@Value("${fhir.terminology-server.circuit-breaker.failure-threshold:5}") int circuitBreakerFailureThreshold,
+			@Value("${fhir.terminology-server.circuit-breaker.open-duration:30s}") Duration circuitBreakerOpenDuration) {
+
 		if (terminologyServerUrl.isEmpty()) {
 			throw new IllegalArgumentException("Terminology server URL cannot be empty. Please set config item 'fhir.terminology-server.url'.");
 		}
-		restTemplate = new RestTemplateBuilder()
-				.rootUri(terminologyServerUrl)
-				.build();
+		httpClient = new TerminologyHttpClient(terminologyServerUrl, connectTimeout, maximumConcurrentRequests, readerThreads,
+				new CircuitBreaker("terminology-server", circuitBreakerFailureThreshold, circuitBreakerOpenDuration));
+		this.lookupTimeout = lookupTimeout;
+		this.expandTimeout = expandTimeout;
+		this.expandParallelPages = Math.max(1, expandParallelPages);
+		// Unknown or invalid codes from a misconfigured mapping fail the same way each time, so the failure is kept for a while too.
+		// Server errors and timeouts are not kept, the next lookup may well succeed.
+		// Expired results are still used while they are fetched again, so that an outage does not affect codes seen before
+		lookupCache = new TerminologyCache<>("lookup", lookupCacheMaximumSize, conceptParameters -> 1, cacheTimeToLive, cacheStaleTimeToLive, lookupFailureTimeToLive,
+				HttpClientErrorException.class::isInstance);
+		valueSetCache = new TerminologyCache<>("expand", valueSetCacheMaximumCodes, CodeSet::size, cacheTimeToLive, cacheStaleTimeToLive, null, failure -> false);
+		lookupBatcher = lookupBatchWindow.isZero() || lookupBatchMaximumSize < 2 ? null :
+				new RequestBatcher<>("lookup", lookupBatchWindow, lookupBatchMaximumSize, 4, this::sendLookupBatch);
+		if (!diskCacheFile.isEmpty()) {
+			diskStore = new TerminologyDiskStore(Path.of(diskCacheFile), terminologyServerUrl, cacheTimeToLive);
+			diskStore.load(new TerminologyDiskStore.Listener() {
+				@Override
+				public void lookup(String key, ConceptParameters conceptParameters, Duration age) {
+					lookupCache.put(key, conceptParameters, age);
+				}
+
+				@Override
+				public void expansion(String key, CodeSet codes, Duration age) {
+					valueSetCache.put(key, codes, age);
+				}
+			});
+		} else {
+			diskStore = null;
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (lookupBatcher != null) {
+			lookupBatcher.shutdown();
+		}
+		httpClient.shutdown();
+		if (diskStore != null) {
+			diskStore.close();
+		}
+	}
+
+	public void setSnapshotService(SnomedSnapshotService snapshotService) {
+		this.snapshotService = snapshotService;
 	}
 
 	public ConceptParameters lookup(String codeSystem, String code) {
-		String cacheKey = format("%s|%s", codeSystem, code);
-		if (!lookupCache.containsKey(cacheKey)) {
-			logger.info("Lookup system {} code {}", codeSystem, code);
-
-			ResponseEntity<String> response = restTemplate.exchange(format("/CodeSystem/$lookup?_format=json&system=%s&code=%s&property=*", codeSystem, code),
-					HttpMethod.GET, null, String.class);
-			Parameters parameters = FhirContext.forR4().newJsonParser().parseResource(Parameters.class, response.getBody());
-			ConceptParameters conceptParameters =  new ConceptParameters();
-			conceptParameters.setParameter(parameters.getParameter());
-			lookupCache.put(cacheKey, conceptParameters);
+		return TerminologyCache.join(lookupAsync(codeSystem, code));
+	}
+
+	/**
+	 * Looks up all codes that are not cached together, in as few requests as the batch size allows.
+	 * @return the lookup of each code, codes that failed to be looked up are left out.
+	 */
+	public Map<String, ConceptParameters> lookupAll(String codeSystem, Collection<String> codes) {
+		Map<String, CompletableFuture<ConceptParameters>> lookups = new LinkedHashMap<>();
+		for (String code : codes) {
+			lookups.computeIfAbsent(code, c -> lookupAsync(codeSystem, c));
 		}
-		return lookupCache.get(cacheKey);
-	}
-
-	public Collection<Coding> expandValueSet(String valueSetURI) throws RestClientException {
-		if (!valueSetCache.containsKey(valueSetURI)) {
-			logger.info("Expanding ValueSet {}", valueSetURI);
-
-			int offset = 0;
-
-			List<CDSCoding> codings = new ArrayList<>();
-			boolean moreToLoad = true;
-			while (moreToLoad) {
-				ResponseEntity<ValueSet> response = restTemplate.exchange(format("/ValueSet/$expand?size=1000&_format=json&offset=%s&url=%s", offset, valueSetURI),
-						HttpMethod.GET, null, ValueSet.class);
-				ValueSet body = response.getBody();
-				ValueSetExpansion expansion = body.getExpansion();
-				List<CDSCoding> contains = expansion.getContains();
-				if (contains != null) {
-					codings.addAll(contains);
-					Integer total = expansion.getTotal();
-					moreToLoad = (total != null && codings.size() < total) || contains.isEmpty();
-					offset = codings.size();
-				} else {
-					moreToLoad = false;
+		Map<String, ConceptParameters> conceptParameters = new HashMap<>();
+		lookups.forEach((code, lookup) -> {
+			try {
+				ConceptParameters parameters = TerminologyCache.join(lookup);
+				if (parameters != null) {
+					conceptParameters.put(code, parameters);
 				}
+			} catch (RuntimeException e) {
+				logger.debug("Lookup of system {} code {} failed.", codeSystem, code, e);
+			}
+		});
+		return conceptParameters;
+	}
+
+	/**
+	 * Looks up a code without holding the calling thread while the terminology server responds.
+	 * SNOMED CT concepts in the local snapshot, if there is one, are answered straight away and never sent to the server.
+	 */
+	public CompletableFuture<ConceptParameters> lookupAsync(String codeSystem, String code) {
+		if (snapshotService != null) {
+			ConceptParameters localConceptParameters = snapshotService.lookup(codeSystem, code);
+			if (localConceptParameters != null) {
+				return CompletableFuture.completedFuture(localConceptParameters);
+			}
+		}
+		return lookupCache.getAsync(format("%s|%s", codeSystem, code), cacheKey -> (lookupBatcher != null ?
+				lookupBatcher.submit(new LookupRequest(codeSystem, code)) :
+				fetchLookup(codeSystem, code))
+				.thenApply(conceptParameters -> {
+					if (diskStore != null && conceptParameters != null) {
+						updateVersion(conceptParameters.getVersion());
+						diskStore.putLookup(cacheKey, conceptParameters);
+					}
+					return conceptParameters;
+				}));
+	}
+
+	private CompletableFuture<ConceptParameters> fetchLookup(String codeSystem, String code) {
+		logger.info("Lookup system {} code {}", codeSystem, code);
+
+		return httpClient.getAsync(format("/CodeSystem/$lookup?_format=json&system=%s&code=%s&property=*", encode(codeSystem), encode(code)),
+				lookupTimeout, FHIRResponseReader::readLookup);
+	}
+
+	private CompletableFuture<?> sendLookupBatch(List<LookupRequest> requests, List<CompletableFuture<ConceptParameters>> results) {
+		if (requests.size() < 2 || !batchLookupSupported) {
+			return fetchLookups(requests, results);
+		}
+		logger.info("Lookup {} codes in batch", requests.size());
+		byte[] bundle;
+		try {
+			bundle = writeLookupBundle(requests);
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		return httpClient.postAsync("/", bundle, lookupTimeout, FHIRResponseReader::readBatchLookups)
+				.handle((entries, throwable) -> {
+					if (throwable == null) {
+						for (int i = 0; i < results.size(); i++) {
+							if (i >= entries.size()) {
+								// A short response is a server fault, not a problem with the code
+								results.get(i).completeExceptionally(new ResourceAccessException(format("Batch response has %s entries for %s lookups, no result for system %s code %s.",
+										entries.size(), requests.size(), requests.get(i).codeSystem(), requests.get(i).code())));
+								continue;
+							}
+							FHIRResponseReader.BatchLookupEntry entry = entries.get(i);
+							if (entry.isSuccessful()) {
+								results.get(i).complete(entry.conceptParameters());
+							} else {
+								results.get(i).completeExceptionally(createEntryException(requests.get(i), entry));
+							}
+						}
+						return CompletableFuture.completedFuture(null);
+					}
+					Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+					if (cause instanceof HttpStatusCodeException statusCodeException && BATCH_NOT_SUPPORTED_STATUSES.contains(statusCodeException.getStatusCode().value())) {
+						batchLookupSupported = false;
+						logger.warn("Terminology server does not support batch requests, status {}, codes will be looked up individually.", statusCodeException.getStatusCode());
+						return fetchLookups(requests, results);
+					}
+					if (cause instanceof HttpClientErrorException clientErrorException) {
+						// Authorisation, rate limiting or one bad entry, the next batch may be accepted
+						logger.info("Terminology server rejected a batch request with status {}, the codes of this batch will be looked up individually.", clientErrorException.getStatusCode());
+						return fetchLookups(requests, results);
+					}
+					return CompletableFuture.failedFuture(cause);
+				})
+				.thenCompose(sent -> sent);
+	}
+
+	private CompletableFuture<?> fetchLookups(List<LookupRequest> requests, List<CompletableFuture<ConceptParameters>> results) {
+		CompletableFuture<?>[] lookups = new CompletableFuture[requests.size()];
+		for (int i = 0; i < requests.size(); i++) {
+			LookupRequest request = requests.get(i);
+			CompletableFuture<ConceptParameters> result = results.get(i);
+			lookups[i] = fetchLookup(request.codeSystem(), request.code())
+					.handle((conceptParameters, throwable) -> throwable == null ? result.complete(conceptParameters) : result.completeExceptionally(throwable));
+		}
+		return CompletableFuture.allOf(lookups);
+	}
+
+	private static byte[] writeLookupBundle(List<LookupRequest> requests) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream)) {
+			generator.writeStartObject();
+			generator.writeStringField("resourceType", "Bundle");
+			generator.writeStringField("type", "batch");
+			generator.writeArrayFieldStart("entry");
+			for (LookupRequest lookupRequest : requests) {
+				generator.writeStartObject();
+				generator.writeObjectFieldStart("request");
+				generator.writeStringField("method", "GET");
+				generator.writeStringField("url", format("CodeSystem/$lookup?system=%s&code=%s&property=*", encode(lookupRequest.codeSystem()), encode(lookupRequest.code())));
+				generator.writeEndObject();
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+		}
+		return outputStream.toByteArray();
+	}
+
+	private static String encode(String queryParameterValue) {
+		return URLEncoder.encode(queryParameterValue, StandardCharsets.UTF_8);
+	}
+
+	// The same exception types as an individual lookup, so that callers can tell unknown codes from server errors
+	private static RestClientException createEntryException(LookupRequest request, FHIRResponseReader.BatchLookupEntry entry) {
+		String statusText = format("Lookup of system %s code %s returned status %s", request.codeSystem(), request.code(), entry.status());
+		if (entry.statusCode() >= 400 && entry.statusCode() < 500) {
+			return HttpClientErrorException.create(HttpStatusCode.valueOf(entry.statusCode()), statusText, null, null, null);
+		} else if (entry.statusCode() >= 500 && entry.statusCode() < 600) {
+			return HttpServerErrorException.create(HttpStatusCode.valueOf(entry.statusCode()), statusText, null, null, null);
+		}
+		return new RestClientException(statusText);
+	}
+
+	public CodeSet expandValueSet(String valueSetURI) throws RestClientException {
+		return TerminologyCache.join(expandValueSetAsync(valueSetURI));
+	}
+
+	/**
+	 * Expands a ValueSet without holding the calling thread while the terminology server responds.
+	 * SNOMED CT implicit ValueSets are evaluated against the local snapshot, if there is one, when their ECL is supported locally.
+	 */
+	public CompletableFuture<CodeSet> expandValueSetAsync(String valueSetURI) {
+		if (snapshotService != null) {
+			CodeSet localCodes = snapshotService.expand(valueSetURI);
+			if (localCodes != null) {
+				return CompletableFuture.completedFuture(localCodes);
 			}
-			valueSetCache.put(valueSetURI, codings.stream().map(cdsCoding -> new Coding(cdsCoding.getSystem(), cdsCoding.getCode(), null)).collect(Collectors.toList()));
 		}
-		return valueSetCache.get(valueSetURI);
+		return valueSetCache.getAsync(valueSetURI, key -> fetchExpansion(valueSetURI)
+				.thenApply(codes -> {
+					if (diskStore != null) {
+						diskStore.putExpansion(valueSetURI, codes);
+					}
+					return codes;
+				}));
+	}
+
+	private CompletableFuture<CodeSet> fetchExpansion(String valueSetURI) {
+		logger.info("Expanding ValueSet {}", valueSetURI);
+
+		CodeSet.Builder codes = CodeSet.builder();
+		return fetchExpansionPage(valueSetURI, 0, codes).thenCompose(firstPage -> {
+			if (diskStore != null) {
+				updateVersion(firstPage.getVersion());
+			}
+			int pageSize = firstPage.getCount();
+			// An empty page means there is nothing more to load, whatever the total says
+			if (pageSize == 0) {
+				return CompletableFuture.completedFuture(codes.build());
+			}
+			Integer total = firstPage.getTotal();
+			if (total == null) {
+				// Without a total the pages can only be found one after another
+				return fetchExpansionPagesInTurn(valueSetURI, pageSize, pageSize, codes).thenApply(ignored -> codes.build());
+			}
+
+			// The server may return fewer codes than requested per page, the first page gives the size to step by
+			List<Integer> offsets = new ArrayList<>();
+			for (int offset = pageSize; offset < total; offset += pageSize) {
+				offsets.add(offset);
+			}
+			CodeSet[] pages = new CodeSet[offsets.size()];
+			AtomicInteger nextPage = new AtomicInteger();
+			AtomicBoolean failed = new AtomicBoolean();
+			List<CompletableFuture<Void>> fetchers = new ArrayList<>();
+			for (int i = 0; i < Math.min(expandParallelPages, offsets.size()); i++) {
+				fetchers.add(fetchNextExpansionPages(valueSetURI, offsets, pages, nextPage, failed));
+			}
+			return CompletableFuture.allOf(fetchers.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+				for (CodeSet page : pages) {
+					codes.addAll(page);
+				}
+				return codes.build();
+			});
+		});
 	}
 
+	// Each fetcher takes the next page not yet started once its previous page has arrived, so at most expandParallelPages requests are in progress
+	private CompletableFuture<Void> fetchNextExpansionPages(String valueSetURI, List<Integer> offsets, CodeSet[] pages, AtomicInteger nextPage, AtomicBoolean failed) {
+		int page = nextPage.getAndIncrement();
+		if (page >= offsets.size() || failed.get()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		CodeSet.Builder pageCodes = CodeSet.builder();
+		return fetchExpansionPage(valueSetURI, offsets.get(page), pageCodes)
+				.whenComplete((ignored, throwable) -> {
+					if (throwable != null) {
+						failed.set(true);
+					}
+				})
+				.thenCompose(ignored -> {
+					pages[page] = pageCodes.build();
+					return fetchNextExpansionPages(valueSetURI, offsets, pages, nextPage, failed);
+				});
+	}
+
+	private CompletableFuture<Void> fetchExpansionPagesInTurn(String valueSetURI, int offset, int pageSize, CodeSet.Builder codes) {
+		return fetchExpansionPage(valueSetURI, offset, codes).thenCompose(page -> page.getCount() == pageSize ?
+				fetchExpansionPagesInTurn(valueSetURI, offset + pageSize, pageSize, codes) :
+				CompletableFuture.completedFuture(null));
+	}
+
+	private CompletableFuture<FHIRResponseReader.ExpansionPage> fetchExpansionPage(String valueSetURI, int offset, CodeSet.Builder codes) {
+		return httpClient.getAsync(format("/ValueSet/$expand?size=%s&_format=json&offset=%s&url=%s", EXPAND_PAGE_SIZE, offset, encode(valueSetURI)),
+				expandTimeout, body -> FHIRResponseReader.readExpansionPage(body, codes));
+	}
+
+	// Results cached from an earlier edition may no longer be correct
+	private void updateVersion(String version) {
+		if (diskStore.updateVersion(version)) {
+			lookupCache.invalidateAll();
+			valueSetCache.invalidateAll();
+			versionChangeListeners.forEach(Runnable::run);
+		}
+	}
+
+	public void addVersionChangeListener(Runnable listener) {
+		versionChangeListeners.add(listener);
+	}
+
+	public List<TerminologyCacheStats> getCacheStats() {
+		return List.of(lookupCache.getStats(), valueSetCache.getStats());
+	}
+
+	public TerminologyHttpStats getHttpStats() {
+		return httpClient.getStats();
+	}
+
+	private record LookupRequest(String codeSystem, String code) {
+	}
 }
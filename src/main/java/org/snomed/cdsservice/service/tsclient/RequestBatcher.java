@@ -0,0 +1,113 @@
+package org.snomed.cdsservice.service.tsclient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects requests submitted by any thread over a short window and sends them together.
+ * A batch is sent when the window after its first request ends, or earlier when it reaches the maximum batch size.
+ */
+public class RequestBatcher<T, V> {
+
+	@FunctionalInterface
+	public interface BatchSender<T, V> {
+
+		/**
+		 * Sends the requests and completes the result at the same index as each request.
+		 * @return a future that completes once the results have been completed, so that sending need not hold a thread.
+		 */
+		CompletableFuture<?> send(List<T> requests, List<CompletableFuture<V>> results);
+	}
+
+	private final String name;
+	private final long windowNanos;
+	private final int maximumBatchSize;
+	private final BatchSender<T, V> sender;
+	private final ScheduledExecutorService executor;
+
+	// Guarded by this
+	private List<T> pendingRequests = new ArrayList<>();
+	private List<CompletableFuture<V>> pendingResults = new ArrayList<>();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public RequestBatcher(String name, Duration window, int maximumBatchSize, int senderThreads, BatchSender<T, V> sender) {
+		this.name = name;
+		this.windowNanos = window.toNanos();
+		this.maximumBatchSize = maximumBatchSize;
+		this.sender = sender;
+		AtomicInteger threadNumber = new AtomicInteger();
+		ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(senderThreads, runnable -> {
+			Thread thread = new Thread(runnable, name + "-batch-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduledExecutor.setRemoveOnCancelPolicy(true);
+		this.executor = scheduledExecutor;
+	}
+
+	public CompletableFuture<V> submit(T request) {
+		CompletableFuture<V> result = new CompletableFuture<>();
+		boolean full;
+		synchronized (this) {
+			pendingRequests.add(request);
+			pendingResults.add(result);
+			if (pendingRequests.size() == 1) {
+				executor.schedule(this::sendPending, windowNanos, TimeUnit.NANOSECONDS);
+			}
+			full = pendingRequests.size() >= maximumBatchSize;
+		}
+		if (full) {
+			executor.execute(this::sendPending);
+		}
+		return result;
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	private void sendPending() {
+		List<T> requests;
+		List<CompletableFuture<V>> results;
+		synchronized (this) {
+			if (pendingRequests.isEmpty()) {
+				// Already sent because the batch was full
+				return;
+			}
+			requests = pendingRequests;
+			results = pendingResults;
+			pendingRequests = new ArrayList<>();
+			pendingResults = new ArrayList<>();
+		}
+		CompletableFuture<?> sent;
+		try {
+			sent = sender.send(requests, results);
+		} catch (RuntimeException e) {
+			sent = CompletableFuture.failedFuture(e);
+		}
+		sent.whenComplete((ignored, throwable) -> {
+			if (throwable != null) {
+				Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+				logger.warn("Failed to send {} batch of {} requests.", name, requests.size(), cause);
+				results.forEach(result -> result.completeExceptionally(cause));
+			}
+			// Results the sender did not complete would leave callers waiting forever
+			for (CompletableFuture<V> result : results) {
+				if (!result.isDone()) {
+					result.completeExceptionally(new IllegalStateException(String.format("No result for request in %s batch.", name)));
+				}
+			}
+		});
+	}
+}
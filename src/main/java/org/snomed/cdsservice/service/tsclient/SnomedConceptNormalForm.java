@@ -1,32 +1,263 @@
 package org.snomed.cdsservice.service.tsclient;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
+/**
+ * Immutable normal form of a SNOMED CT concept: its parents, ungrouped attributes and attribute groups.
+ * Attribute types are held as longs, values as the text of the concept identifier or concrete value, without the leading '#'.
+ */
 public class SnomedConceptNormalForm {
 
-	private final Set<String> parentCodes;
-	private final Map<String, String> attributes;
-	private final List<Map<String, String>> attributeGroups;
+	private static final AttributeGroup NO_ATTRIBUTES = new AttributeGroup(new long[0], new String[0]);
 
-	public SnomedConceptNormalForm() {
-		parentCodes = new HashSet<>();
-		attributes = new HashMap<>();
-		attributeGroups = new ArrayList<>();
+	private final long[] parentIds;
+	private final AttributeGroup attributes;
+	private final List<AttributeGroup> attributeGroups;
+
+	private SnomedConceptNormalForm(long[] parentIds, AttributeGroup attributes, List<AttributeGroup> attributeGroups) {
+		this.parentIds = parentIds;
+		this.attributes = attributes;
+		this.attributeGroups = attributeGroups;
+	}
+
+	/**
+	 * Parses a normal form in the terse format of the terminology server in a single pass, for example
+	 * <code>===763158003:411116001=421026006,{732943007=387517004,1142135004=#500}</code>.
+	 * @throws IllegalArgumentException if the text is not a terse normal form.
+	 */
+	public static SnomedConceptNormalForm parse(String normalFormTerse) {
+		return new Parser(normalFormTerse).parse();
 	}
 
-	public void addParent(String code) {
-		parentCodes.add(code);
+	public long[] getParentIds() {
+		return parentIds.clone();
 	}
 
-	public Set<String> getParentCodes() {
-		return parentCodes;
+	public boolean hasParent(long conceptId) {
+		for (long parentId : parentIds) {
+			if (parentId == conceptId) {
+				return true;
+			}
+		}
+		return false;
 	}
 
-	public Map<String, String> getAttributes() {
+	/**
+	 * @return the attributes that are not in a group.
+	 */
+	public AttributeGroup getAttributes() {
 		return attributes;
 	}
 
-	public List<Map<String, String>> getAttributeGroups() {
+	public List<AttributeGroup> getAttributeGroups() {
 		return attributeGroups;
 	}
+
+	public static final class AttributeGroup {
+
+		private final long[] typeIds;
+		private final String[] values;
+
+		private AttributeGroup(long[] typeIds, String[] values) {
+			this.typeIds = typeIds;
+			this.values = values;
+		}
+
+		/**
+		 * @return the value of the last attribute of the type in this group, as a map of the group would give, or null if there is none.
+		 */
+		public String get(long typeId) {
+			for (int i = typeIds.length - 1; i >= 0; i--) {
+				if (typeIds[i] == typeId) {
+					return values[i];
+				}
+			}
+			return null;
+		}
+
+		public boolean contains(long typeId) {
+			return get(typeId) != null;
+		}
+
+		public int size() {
+			return typeIds.length;
+		}
+
+		public long getTypeId(int index) {
+			return typeIds[index];
+		}
+
+		public String getValue(int index) {
+			return values[index];
+		}
+	}
+
+	private static final class Parser {
+
+		private final String text;
+		private int position;
+
+		private long[] typeIds = new long[8];
+		private String[] values = new String[8];
+		private int attributeCount;
+
+		private Parser(String text) {
+			this.text = text;
+		}
+
+		private SnomedConceptNormalForm parse() {
+			skipWhitespace();
+			// Definition status, === for defined or <<< for primitive
+			if (text.startsWith("===", position) || text.startsWith("<<<", position)) {
+				position += 3;
+			}
+
+			long[] parentIds = new long[2];
+			int parentCount = 0;
+			do {
+				if (parentCount == parentIds.length) {
+					parentIds = Arrays.copyOf(parentIds, parentCount * 2);
+				}
+				parentIds[parentCount++] = readConceptId();
+				skipWhitespace();
+			} while (accept('+'));
+
+			AttributeGroup attributes = NO_ATTRIBUTES;
+			List<AttributeGroup> attributeGroups = Collections.emptyList();
+			if (accept(':')) {
+				attributeGroups = new ArrayList<>();
+				do {
+					skipWhitespace();
+					if (accept('{')) {
+						int groupStart = attributeCount;
+						do {
+							readAttribute();
+							skipWhitespace();
+						} while (accept(','));
+						expect('}');
+						attributeGroups.add(group(groupStart));
+						attributeCount = groupStart;
+					} else {
+						readAttribute();
+					}
+					skipWhitespace();
+				} while (accept(','));
+				if (attributeCount > 0) {
+					attributes = group(0);
+				}
+				attributeGroups = Collections.unmodifiableList(attributeGroups);
+			}
+			skipWhitespace();
+			if (position < text.length()) {
+				throw error("Unexpected character");
+			}
+			return new SnomedConceptNormalForm(Arrays.copyOf(parentIds, parentCount), attributes, attributeGroups);
+		}
+
+		private AttributeGroup group(int start) {
+			return new AttributeGroup(Arrays.copyOfRange(typeIds, start, attributeCount), Arrays.copyOfRange(values, start, attributeCount));
+		}
+
+		private void readAttribute() {
+			long typeId = readConceptId();
+			skipWhitespace();
+			expect('=');
+			skipWhitespace();
+			String value = readValue();
+			if (attributeCount == typeIds.length) {
+				typeIds = Arrays.copyOf(typeIds, attributeCount * 2);
+				values = Arrays.copyOf(values, attributeCount * 2);
+			}
+			typeIds[attributeCount] = typeId;
+			values[attributeCount] = value;
+			attributeCount++;
+		}
+
+		private String readValue() {
+			int start = position;
+			char c = position < text.length() ? text.charAt(position) : 0;
+			if (c == '#') {
+				// Numeric concrete value
+				start = ++position;
+				while (position < text.length() && (Character.isDigit(text.charAt(position)) || text.charAt(position) == '.' || text.charAt(position) == '-')) {
+					position++;
+				}
+			} else if (c == '"') {
+				// String concrete value
+				int end = text.indexOf('"', position + 1);
+				if (end == -1) {
+					throw error("String value is not closed");
+				}
+				position = end + 1;
+				return text.substring(start + 1, end);
+			} else if (c == '(') {
+				// Nested expression, kept as text
+				int depth = 0;
+				do {
+					if (text.charAt(position) == '(') {
+						depth++;
+					} else if (text.charAt(position) == ')') {
+						depth--;
+					}
+					position++;
+				} while (depth > 0 && position < text.length());
+				if (depth > 0) {
+					throw error("Nested expression is not closed");
+				}
+			} else {
+				while (position < text.length() && Character.isDigit(text.charAt(position))) {
+					position++;
+				}
+			}
+			if (start == position) {
+				throw error("Expected a value");
+			}
+			return text.substring(start, position);
+		}
+
+		private long readConceptId() {
+			skipWhitespace();
+			long conceptId = 0;
+			int start = position;
+			while (position < text.length()) {
+				char c = text.charAt(position);
+				if (c < '0' || c > '9') {
+					break;
+				}
+				conceptId = conceptId * 10 + (c - '0');
+				position++;
+			}
+			if (start == position || position - start > 18) {
+				throw error("Expected a concept identifier");
+			}
+			return conceptId;
+		}
+
+		private boolean accept(char c) {
+			if (position < text.length() && text.charAt(position) == c) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(char c) {
+			if (!accept(c)) {
+				throw error("Expected '" + c + "'");
+			}
+		}
+
+		private void skipWhitespace() {
+			while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+				position++;
+			}
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(String.format("%s at position %s of normal form '%s'.", message, position, text));
+		}
+	}
 }
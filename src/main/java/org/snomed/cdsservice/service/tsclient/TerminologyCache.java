@@ -0,0 +1,320 @@
+package org.snomed.cdsservice.service.tsclient;
+
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread safe cache of terminology server results, bounded by total weight with least recently used eviction and an optional time to live.
+ * Loads happen outside the lock so that a slow remote call does not block lookups of other keys.
+ * Concurrent loads of the same key are coalesced, one caller loads the value and the others wait for its result.
+ * Load failures can be cached too, with their own shorter time to live, so that a key that keeps failing is not loaded again on every request.
+ * Asynchronous callers can be given an expired value for a while after it expires, while it is loaded again in the background,
+ * so that they do not wait for a slow or unavailable server.
+ */
+public class TerminologyCache<K, V> {
+
+	private final String name;
+	private final long maximumWeight;
+	private final ToLongFunction<V> weigher;
+	private final long timeToLiveNanos;
+	private final long staleTimeToLiveNanos;
+	private final long failureTimeToLiveNanos;
+	private final Predicate<RuntimeException> cachedFailures;
+	private final LongSupplier ticker;
+
+	// Access ordered, guarded by itself
+	private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long weight;
+
+	// Loads in progress, removed once the loaded value is cached
+	private final Map<K, CompletableFuture<V>> loadsInFlight = new ConcurrentHashMap<>();
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder failureHitCount = new LongAdder();
+	private final LongAdder staleHitCount = new LongAdder();
+	private final LongAdder loadCount = new LongAdder();
+	private final LongAdder loadFailureCount = new LongAdder();
+	private final LongAdder coalescedLoadCount = new LongAdder();
+	private final LongAdder totalLoadTimeNanos = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+
+	/**
+	 * @param maximumWeight total weight of the entries held, least recently used entries are evicted above this.
+	 * @param weigher weight of each value, for example the number of codes in a value set.
+	 * @param timeToLive how long an entry is used after it was loaded, or null or zero for no expiry.
+	 */
+	public TerminologyCache(String name, long maximumWeight, ToLongFunction<V> weigher, Duration timeToLive) {
+		this(name, maximumWeight, weigher, timeToLive, null, null, failure -> false, System::nanoTime);
+	}
+
+	/**
+	 * @param staleTimeToLive how long after expiry an entry is still given to {@link #getAsync} callers while it is loaded again, or null or zero to not serve expired entries.
+	 * @param failureTimeToLive how long a load failure is rethrown to callers before the key is loaded again, or null or zero to not cache failures.
+	 * @param cachedFailures the load failures to cache, for example only those that will happen again on the next load.
+	 */
+	public TerminologyCache(String name, long maximumWeight, ToLongFunction<V> weigher, Duration timeToLive, Duration staleTimeToLive, Duration failureTimeToLive,
+			Predicate<RuntimeException> cachedFailures) {
+		this(name, maximumWeight, weigher, timeToLive, staleTimeToLive, failureTimeToLive, cachedFailures, System::nanoTime);
+	}
+
+	TerminologyCache(String name, long maximumWeight, ToLongFunction<V> weigher, Duration timeToLive, LongSupplier ticker) {
+		this(name, maximumWeight, weigher, timeToLive, null, null, failure -> false, ticker);
+	}
+
+	TerminologyCache(String name, long maximumWeight, ToLongFunction<V> weigher, Duration timeToLive, Duration staleTimeToLive, Duration failureTimeToLive,
+			Predicate<RuntimeException> cachedFailures, LongSupplier ticker) {
+		if (maximumWeight <= 0) {
+			throw new IllegalArgumentException(String.format("Maximum weight of cache %s must be greater than zero.", name));
+		}
+		this.name = name;
+		this.maximumWeight = maximumWeight;
+		this.weigher = weigher;
+		this.timeToLiveNanos = timeToLive != null ? timeToLive.toNanos() : 0;
+		this.staleTimeToLiveNanos = staleTimeToLive != null ? staleTimeToLive.toNanos() : 0;
+		this.failureTimeToLiveNanos = failureTimeToLive != null ? failureTimeToLive.toNanos() : 0;
+		this.cachedFailures = cachedFailures;
+		this.ticker = ticker;
+	}
+
+	/**
+	 * @param allowStale return an expired entry that is still within the stale time to live.
+	 */
+	private Entry<V> getEntry(K key, long now, boolean allowStale) {
+		synchronized (entries) {
+			Entry<V> entry = entries.get(key);
+			if (entry != null && isExpired(entry, now)) {
+				if (!isStale(entry, now)) {
+					removeEntry(key, entry);
+				}
+				entry = allowStale && isStale(entry, now) ? entry : null;
+			}
+			if (entry == null) {
+				missCount.increment();
+			} else if (isExpired(entry, now)) {
+				staleHitCount.increment();
+			} else if (entry.failure != null) {
+				failureHitCount.increment();
+			} else {
+				hitCount.increment();
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Returns the cached value, loading and caching it if missing or expired, for loaders that complete later, for example as part of a batch.
+	 * If the key is already being loaded this returns that load rather than starting another.
+	 * The returned future completes with the value, or exceptionally with the loader's exception, which is cached if there is a failure time to live.
+	 * An expired value within the stale time to live is returned straight away and loaded again in the background,
+	 * it is kept if that load fails so that callers are not affected by the server being unavailable.
+	 */
+	public CompletableFuture<V> getAsync(K key, Function<K, CompletableFuture<V>> loader) {
+		long now = ticker.getAsLong();
+		Entry<V> entry = getEntry(key, now, true);
+		if (entry != null) {
+			if (entry.failure != null) {
+				return CompletableFuture.failedFuture(newCallerFailure(entry.failure));
+			}
+			if (isExpired(entry, now) && !loadsInFlight.containsKey(key)) {
+				loadAsync(key, loader);
+			}
+			return CompletableFuture.completedFuture(entry.value);
+		}
+		return loadAsync(key, loader);
+	}
+
+	private CompletableFuture<V> loadAsync(K key, Function<K, CompletableFuture<V>> loader) {
+		CompletableFuture<V> load = new CompletableFuture<>();
+		CompletableFuture<V> loadInFlight = loadsInFlight.putIfAbsent(key, load);
+		if (loadInFlight != null) {
+			coalescedLoadCount.increment();
+			return loadInFlight;
+		}
+		Entry<V> entry = getCachedEntry(key);
+		if (entry != null) {
+			loadsInFlight.remove(key, load);
+			if (entry.failure != null) {
+				load.completeExceptionally(newCallerFailure(entry.failure));
+			} else {
+				load.complete(entry.value);
+			}
+			return load;
+		}
+		long start = ticker.getAsLong();
+		CompletableFuture<V> remoteLoad;
+		try {
+			remoteLoad = loader.apply(key);
+		} catch (RuntimeException | Error e) {
+			remoteLoad = CompletableFuture.failedFuture(e);
+		}
+		remoteLoad.whenComplete((loadedValue, throwable) -> {
+			loadCount.increment();
+			totalLoadTimeNanos.add(ticker.getAsLong() - start);
+			if (throwable != null) {
+				loadFailureCount.increment();
+				Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+				if (cause instanceof RuntimeException runtimeException) {
+					putFailure(key, runtimeException);
+				}
+				loadsInFlight.remove(key, load);
+				load.completeExceptionally(cause);
+			} else {
+				put(key, loadedValue);
+				loadsInFlight.remove(key, load);
+				load.complete(loadedValue);
+			}
+		});
+		return load;
+	}
+
+	public void put(K key, V value) {
+		put(key, value, Duration.ZERO);
+	}
+
+	/**
+	 * Caches a value that was loaded some time ago, for example read from disk, so that it expires at the same time as if it had been cached then.
+	 */
+	public void put(K key, V value, Duration age) {
+		if (value == null) {
+			return;
+		}
+		long valueWeight = Math.max(1, weigher.applyAsLong(value));
+		if (valueWeight > maximumWeight) {
+			// Larger than the whole cache, caching it would evict everything else
+			return;
+		}
+		putEntry(key, new Entry<>(value, null, valueWeight, ticker.getAsLong() - age.toNanos()));
+	}
+
+	private void putFailure(K key, RuntimeException failure) {
+		if (failureTimeToLiveNanos > 0 && cachedFailures.test(failure)) {
+			long now = ticker.getAsLong();
+			synchronized (entries) {
+				// A failed background load keeps the stale value, which is still valid for other callers
+				Entry<V> current = entries.get(key);
+				if (current != null && isStale(current, now)) {
+					return;
+				}
+				putEntry(key, new Entry<>(null, failure, 1, now));
+			}
+		}
+	}
+
+	// Each caller is given a new exception with the cached failure as its cause, so that callers never share one instance.
+	// Rejections by the terminology server keep their type and status, so that callers can still tell an unknown code from an outage.
+	private static RuntimeException newCallerFailure(RuntimeException failure) {
+		RuntimeException callerFailure;
+		if (failure instanceof HttpClientErrorException clientErrorException) {
+			callerFailure = HttpClientErrorException.create(clientErrorException.getMessage(), clientErrorException.getStatusCode(), clientErrorException.getStatusText(),
+					clientErrorException.getResponseHeaders(), clientErrorException.getResponseBodyAsByteArray(), null);
+		} else {
+			callerFailure = new IllegalStateException(failure.getMessage());
+		}
+		callerFailure.initCause(failure);
+		return callerFailure;
+	}
+
+	private void putEntry(K key, Entry<V> entry) {
+		long valueWeight = entry.weight;
+		synchronized (entries) {
+			Entry<V> previous = entries.put(key, entry);
+			if (previous != null) {
+				weight -= previous.weight;
+			}
+			weight += valueWeight;
+			evictToMaximumWeight();
+		}
+	}
+
+	public void invalidateAll() {
+		synchronized (entries) {
+			entries.clear();
+			weight = 0;
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public TerminologyCacheStats getStats() {
+		long size;
+		long currentWeight;
+		synchronized (entries) {
+			size = entries.size();
+			currentWeight = weight;
+		}
+		return new TerminologyCacheStats(name, size, currentWeight, maximumWeight, hitCount.sum(), missCount.sum(), staleHitCount.sum(), failureHitCount.sum(), loadCount.sum(), loadFailureCount.sum(),
+				coalescedLoadCount.sum(), totalLoadTimeNanos.sum(), evictionCount.sum());
+	}
+
+	private Entry<V> getCachedEntry(K key) {
+		long now = ticker.getAsLong();
+		synchronized (entries) {
+			Entry<V> entry = entries.get(key);
+			return entry != null && !isExpired(entry, now) ? entry : null;
+		}
+	}
+
+	/**
+	 * Waits for a load, rethrowing the exception thrown by the loader rather than a CompletionException.
+	 */
+	public static <V> V join(CompletableFuture<V> load) {
+		try {
+			return load.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			if (e.getCause() instanceof Error error) {
+				throw error;
+			}
+			throw e;
+		}
+	}
+
+	private void evictToMaximumWeight() {
+		Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+		while (weight > maximumWeight && iterator.hasNext()) {
+			Entry<V> eldest = iterator.next().getValue();
+			iterator.remove();
+			weight -= eldest.weight;
+			evictionCount.increment();
+		}
+	}
+
+	private void removeEntry(K key, Entry<V> entry) {
+		entries.remove(key);
+		weight -= entry.weight;
+		evictionCount.increment();
+	}
+
+	private boolean isExpired(Entry<V> entry, long now) {
+		long entryTimeToLiveNanos = entry.failure != null ? failureTimeToLiveNanos : timeToLiveNanos;
+		return entryTimeToLiveNanos > 0 && now - entry.loadedNanos >= entryTimeToLiveNanos;
+	}
+
+	// Expired but still usable while it is loaded again
+	private boolean isStale(Entry<V> entry, long now) {
+		return entry.failure == null && staleTimeToLiveNanos > 0 && isExpired(entry, now) && now - entry.loadedNanos < timeToLiveNanos + staleTimeToLiveNanos;
+	}
+
+	// Holds either a loaded value or the exception its load failed with
+	private record Entry<V>(V value, RuntimeException failure, long weight, long loadedNanos) {
+	}
+}
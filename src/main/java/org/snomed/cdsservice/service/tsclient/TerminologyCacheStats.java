@@ -0,0 +1,105 @@
+package org.snomed.cdsservice.service.tsclient;
+
+public class TerminologyCacheStats {
+
+	private final String name;
+	private final long size;
+	private final long weight;
+	private final long maximumWeight;
+	private final long hitCount;
+	private final long missCount;
+	private final long staleHitCount;
+	private final long failureHitCount;
+	private final long loadCount;
+	private final long loadFailureCount;
+	private final long coalescedLoadCount;
+	private final long totalLoadTimeNanos;
+	private final long evictionCount;
+
+	public TerminologyCacheStats(String name, long size, long weight, long maximumWeight, long hitCount, long missCount, long staleHitCount, long failureHitCount, long loadCount, long loadFailureCount,
+			long coalescedLoadCount, long totalLoadTimeNanos, long evictionCount) {
+		this.name = name;
+		this.size = size;
+		this.weight = weight;
+		this.maximumWeight = maximumWeight;
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.staleHitCount = staleHitCount;
+		this.failureHitCount = failureHitCount;
+		this.loadCount = loadCount;
+		this.loadFailureCount = loadFailureCount;
+		this.coalescedLoadCount = coalescedLoadCount;
+		this.totalLoadTimeNanos = totalLoadTimeNanos;
+		this.evictionCount = evictionCount;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public long getWeight() {
+		return weight;
+	}
+
+	public long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return the number of requests answered with an expired value while it was loaded again.
+	 */
+	public long getStaleHitCount() {
+		return staleHitCount;
+	}
+
+	/**
+	 * @return the number of requests answered with a cached load failure.
+	 */
+	public long getFailureHitCount() {
+		return failureHitCount;
+	}
+
+	public double getHitRate() {
+		long requestCount = hitCount + missCount;
+		return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+	}
+
+	public long getLoadCount() {
+		return loadCount;
+	}
+
+	public long getLoadFailureCount() {
+		return loadFailureCount;
+	}
+
+	/**
+	 * @return the number of cache misses that waited for a load already in progress instead of loading.
+	 */
+	public long getCoalescedLoadCount() {
+		return coalescedLoadCount;
+	}
+
+	public long getTotalLoadTimeNanos() {
+		return totalLoadTimeNanos;
+	}
+
+	public double getAverageLoadTimeMillis() {
+		return loadCount == 0 ? 0 : totalLoadTimeNanos / 1_000_000.0 / loadCount;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+}
@@ -0,0 +1,476 @@
+package org.snomed.cdsservice.service.tsclient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.cdsservice.model.CodeSet;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Append only file of terminology server results, so that a restart does not have to fetch every lookup and expansion again.
+ * The file header holds the server URL and the SNOMED CT edition version the results came from. Results from another server
+ * are ignored and the file is started again when the server reports a new edition version.
+ * Each record is length prefixed, so a record cut short by a crash is dropped on the next start along with nothing else.
+ * <p>
+ * Results are put from the threads that complete terminology requests, so they are only serialised there. Writing, flushing and
+ * starting the file again are done in order on one writer thread, which flushes once for all the records waiting when it runs.
+ */
+public class TerminologyDiskStore {
+
+	public interface Listener {
+
+		void lookup(String key, ConceptParameters conceptParameters, Duration age);
+
+		void expansion(String key, CodeSet codes, Duration age);
+	}
+
+	private static final int MAGIC = 0x54534443;
+	private static final int FORMAT = 1;
+	private static final byte LOOKUP = 1;
+	private static final byte EXPANSION = 2;
+	private static final String SNOMED_EDITION_PREFIX = "http://snomed.info/sct/";
+	// Records waiting for the writer beyond this are dropped rather than held in memory while the disk is slow
+	private static final int MAXIMUM_PENDING_RECORDS = 10_000;
+
+	private final Path file;
+	private final String serverUrl;
+	private final long timeToLiveMillis;
+
+	// Guarded by this, used by load and then the writer thread
+	private DataOutputStream output;
+	private String editionVersion;
+	private boolean failed;
+
+	// Guarded by versionLock, the edition version reported by the server, which the file header catches up with on the writer thread
+	private final Object versionLock = new Object();
+	private String knownEditionVersion;
+
+	// Records to write and file changes, in the order they were made
+	private final ConcurrentLinkedQueue<WriterTask> writerTasks = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingRecords = new AtomicInteger();
+	private final AtomicBoolean writeScheduled = new AtomicBoolean();
+	private final ExecutorService writer;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * @param timeToLive how long a result is used after it was written, or null or zero for no expiry.
+	 */
+	public TerminologyDiskStore(Path file, String serverUrl, Duration timeToLive) {
+		this.file = file;
+		this.serverUrl = serverUrl;
+		this.timeToLiveMillis = timeToLive != null ? timeToLive.toMillis() : 0;
+		this.writer = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "terminology-disk-store");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Reads the results held in the file, then opens the file for new results.
+	 * Expired records are skipped and the file is rewritten without them once they are the majority.
+	 */
+	public synchronized void load(Listener listener) {
+		int liveRecords = 0;
+		int expiredRecords = 0;
+		boolean usable = false;
+		List<byte[]> liveRecordBytes = new ArrayList<>();
+		if (Files.isRegularFile(file)) {
+			long now = System.currentTimeMillis();
+			long goodLength = 0;
+			try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+				if (input.readInt() == MAGIC && input.readInt() == FORMAT && serverUrl.equals(readString(input))) {
+					editionVersion = readString(input);
+					goodLength = headerLength(serverUrl, editionVersion);
+					usable = true;
+					byte[] record;
+					while ((record = readRecord(input)) != null) {
+						if (readRecord(record, now, listener)) {
+							liveRecords++;
+							liveRecordBytes.add(record);
+						} else {
+							expiredRecords++;
+						}
+						goodLength += Integer.BYTES + record.length;
+					}
+				} else {
+					logger.info("Terminology disk cache {} is from another server or format, starting again.", file);
+				}
+			} catch (EOFException e) {
+				// Header or record cut short, the records read so far are kept
+			} catch (IOException | RuntimeException e) {
+				logger.warn("Failed to read terminology disk cache {}, starting again.", file, e);
+				usable = false;
+			}
+			if (usable) {
+				truncate(goodLength);
+			}
+			logger.info("Read {} terminology results from disk cache {}, {} expired.", liveRecords, file, expiredRecords);
+		}
+		synchronized (versionLock) {
+			knownEditionVersion = editionVersion;
+		}
+		if (!usable) {
+			reset(null);
+		} else if (expiredRecords > liveRecords) {
+			rewrite(liveRecordBytes);
+		} else {
+			openForAppend();
+		}
+	}
+
+	public void putLookup(String key, ConceptParameters conceptParameters) {
+		putRecord(record -> {
+			record.writeByte(LOOKUP);
+			writeString(record, key);
+			record.writeLong(System.currentTimeMillis());
+			writeString(record, conceptParameters.getCode());
+			writeString(record, conceptParameters.getDisplay());
+			writeString(record, conceptParameters.getNormalFormTerse());
+			writeString(record, conceptParameters.getVersion());
+		});
+	}
+
+	public void putExpansion(String key, CodeSet codes) {
+		putRecord(record -> {
+			record.writeByte(EXPANSION);
+			writeString(record, key);
+			record.writeLong(System.currentTimeMillis());
+			long[] snomedIds = codes.toSnomedIdArray();
+			record.writeInt(snomedIds.length);
+			for (long snomedId : snomedIds) {
+				record.writeLong(snomedId);
+			}
+			List<String[]> otherCodes = new ArrayList<>();
+			codes.forEachOtherCode((system, code) -> otherCodes.add(new String[]{system, code}));
+			record.writeInt(otherCodes.size());
+			for (String[] otherCode : otherCodes) {
+				writeString(record, otherCode[0]);
+				writeString(record, otherCode[1]);
+			}
+		});
+	}
+
+	/**
+	 * Records the code system version reported by the server. A SNOMED CT edition version that differs from the known one
+	 * empties the file, the first version to be reported is just recorded. Versions of other code systems are ignored.
+	 * @return true if the file held results from a different edition version, which should no longer be used.
+	 */
+	public boolean updateVersion(String version) {
+		String newEditionVersion = getEditionVersion(version);
+		synchronized (versionLock) {
+			if (newEditionVersion == null || newEditionVersion.equals(knownEditionVersion)) {
+				return false;
+			}
+			String previousEditionVersion = knownEditionVersion;
+			knownEditionVersion = newEditionVersion;
+			if (previousEditionVersion == null) {
+				// Results written before the version was known came from this edition
+				logger.info("Terminology server edition version is {}.", newEditionVersion);
+				submit(new WriterTask(null, () -> keepRecords(newEditionVersion)));
+				return false;
+			}
+			logger.info("Terminology server edition version is now {}, previously {}.", newEditionVersion, previousEditionVersion);
+			submit(new WriterTask(null, () -> reset(newEditionVersion)));
+			return true;
+		}
+	}
+
+	public String getEditionVersion() {
+		synchronized (versionLock) {
+			return knownEditionVersion;
+		}
+	}
+
+	/**
+	 * Writes the results that are still waiting, then closes the file. Later results are not kept.
+	 */
+	public void close() {
+		writer.shutdown();
+		try {
+			if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+				logger.warn("Terminology disk cache {} writer did not finish in time.", file);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writePending();
+		synchronized (this) {
+			closeOutput();
+		}
+	}
+
+	private void closeOutput() {
+		if (output != null) {
+			try {
+				output.close();
+			} catch (IOException e) {
+				logger.debug("Failed to close terminology disk cache {}.", file, e);
+			}
+			output = null;
+		}
+	}
+
+	// Lookup versions are an edition URI, expansion versions are often prefixed with the system, for example http://snomed.info/sct|http://snomed.info/sct/900000000000207008/version/20230131
+	static String getEditionVersion(String version) {
+		if (version == null) {
+			return null;
+		}
+		int start = version.indexOf(SNOMED_EDITION_PREFIX);
+		return start >= 0 ? version.substring(start) : null;
+	}
+
+	private boolean readRecord(byte[] record, long now, Listener listener) throws IOException {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+		byte kind = input.readByte();
+		String key = readString(input);
+		long writtenAt = input.readLong();
+		long ageMillis = Math.max(0, now - writtenAt);
+		if (timeToLiveMillis > 0 && ageMillis >= timeToLiveMillis) {
+			return false;
+		}
+		Duration age = Duration.ofMillis(ageMillis);
+		if (kind == LOOKUP) {
+			listener.lookup(key, new ConceptParameters(readString(input), readString(input), readString(input), readString(input)), age);
+		} else if (kind == EXPANSION) {
+			CodeSet.Builder codes = CodeSet.builder();
+			int snomedIdCount = input.readInt();
+			for (int i = 0; i < snomedIdCount; i++) {
+				codes.addSnomedId(input.readLong());
+			}
+			int otherCodeCount = input.readInt();
+			for (int i = 0; i < otherCodeCount; i++) {
+				codes.add(readString(input), readString(input));
+			}
+			listener.expansion(key, codes.build(), age);
+		} else {
+			throw new IOException(String.format("Unknown record kind %s.", kind));
+		}
+		return true;
+	}
+
+	private static byte[] readRecord(DataInputStream input) throws IOException {
+		int length;
+		try {
+			length = input.readInt();
+		} catch (EOFException e) {
+			return null;
+		}
+		byte[] record = new byte[length];
+		input.readFully(record);
+		return record;
+	}
+
+	private void putRecord(RecordWriter recordWriter) {
+		if (pendingRecords.incrementAndGet() > MAXIMUM_PENDING_RECORDS) {
+			pendingRecords.decrementAndGet();
+			logger.debug("Terminology disk cache {} writer is behind, result not kept on disk.", file);
+			return;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			recordWriter.write(new DataOutputStream(bytes));
+		} catch (IOException e) {
+			// Not expected when writing to memory
+			pendingRecords.decrementAndGet();
+			throw new UncheckedIOException(e);
+		}
+		submit(new WriterTask(bytes.toByteArray(), null));
+	}
+
+	private void submit(WriterTask task) {
+		writerTasks.add(task);
+		if (writeScheduled.compareAndSet(false, true)) {
+			try {
+				writer.execute(this::writePending);
+			} catch (RejectedExecutionException e) {
+				// Closed, the task is left unwritten
+				writeScheduled.set(false);
+			}
+		}
+	}
+
+	// Runs on the writer thread, tasks submitted while it runs are picked up by the same run
+	private void writePending() {
+		writeScheduled.set(false);
+		synchronized (this) {
+			boolean written = false;
+			WriterTask task;
+			while ((task = writerTasks.poll()) != null) {
+				if (task.record() != null) {
+					pendingRecords.decrementAndGet();
+					written |= writeRecord(task.record());
+				} else {
+					flush(written);
+					written = false;
+					task.action().run();
+				}
+			}
+			flush(written);
+		}
+	}
+
+	private boolean writeRecord(byte[] record) {
+		if (output == null) {
+			return false;
+		}
+		try {
+			output.writeInt(record.length);
+			output.write(record);
+			return true;
+		} catch (IOException e) {
+			disable(e);
+			return false;
+		}
+	}
+
+	private void flush(boolean written) {
+		if (!written || output == null) {
+			return;
+		}
+		try {
+			output.flush();
+		} catch (IOException e) {
+			disable(e);
+		}
+	}
+
+	private void reset(String newEditionVersion) {
+		closeOutput();
+		editionVersion = newEditionVersion;
+		rewrite(List.of());
+	}
+
+	// Rewrites the file with the new version in the header and the records already written
+	private void keepRecords(String newEditionVersion) {
+		closeOutput();
+		List<byte[]> records = new ArrayList<>();
+		if (!failed) {
+			try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+				input.skipNBytes(headerLength(serverUrl, editionVersion));
+				byte[] record;
+				while ((record = readRecord(input)) != null) {
+					records.add(record);
+				}
+			} catch (EOFException e) {
+				// Record cut short, the records read so far are kept
+			} catch (IOException e) {
+				disable(e);
+			}
+		}
+		editionVersion = newEditionVersion;
+		rewrite(records);
+	}
+
+	// Writes a new file and moves it into place, so that a crash part way through leaves the old file
+	private void rewrite(List<byte[]> records) {
+		closeOutput();
+		if (failed) {
+			return;
+		}
+		try {
+			Path parent = file.toAbsolutePath().getParent();
+			Files.createDirectories(parent);
+			Path tempFile = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+			try (DataOutputStream tempOutput = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+				tempOutput.writeInt(MAGIC);
+				tempOutput.writeInt(FORMAT);
+				writeString(tempOutput, serverUrl);
+				writeString(tempOutput, editionVersion);
+				for (byte[] record : records) {
+					tempOutput.writeInt(record.length);
+					tempOutput.write(record);
+				}
+			}
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			disable(e);
+			return;
+		}
+		openForAppend();
+	}
+
+	private void openForAppend() {
+		if (failed) {
+			return;
+		}
+		try {
+			output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+		} catch (IOException e) {
+			disable(e);
+		}
+	}
+
+	private void truncate(long length) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			if (channel.size() > length) {
+				logger.info("Dropping incomplete record at the end of terminology disk cache {}.", file);
+				channel.truncate(length);
+			}
+		} catch (IOException e) {
+			disable(e);
+		}
+	}
+
+	// The in memory caches still work, results are just not kept for the next start
+	private void disable(IOException e) {
+		logger.warn("Failed to write terminology disk cache {}, results will not be kept on disk.", file, e);
+		failed = true;
+		closeOutput();
+	}
+
+	private static long headerLength(String serverUrl, String editionVersion) {
+		return Integer.BYTES * 2 + stringLength(serverUrl) + stringLength(editionVersion);
+	}
+
+	private static long stringLength(String value) {
+		return Integer.BYTES + (value != null ? value.getBytes(StandardCharsets.UTF_8).length : 0);
+	}
+
+	// Strings as a byte count and UTF-8, rather than DataOutput.writeUTF which is limited to 64KB, -1 for null
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		if (value == null) {
+			output.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@FunctionalInterface
+	private interface RecordWriter {
+		void write(DataOutputStream record) throws IOException;
+	}
+
+	// Either a record to append or a change to the file, such as starting it again for a new edition version
+	private record WriterTask(byte[] record, Runnable action) {
+	}
+}
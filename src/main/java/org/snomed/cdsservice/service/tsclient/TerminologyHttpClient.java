@@ -0,0 +1,232 @@
+package org.snomed.cdsservice.service.tsclient;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Non-blocking HTTP client for the terminology server, on the JDK HttpClient which keeps connections alive and uses HTTP/2 where the server supports it.
+ * The number of requests in progress is bounded, requests above the bound wait in a queue without holding a thread.
+ * Response bodies are read as a stream on a small pool of reader threads, never on the calling thread.
+ * Each request has a deadline covering both the response headers and reading the body, a request past its deadline is abandoned and counted as a timeout.
+ * Requests are refused straight away while the circuit breaker is open, after repeated server errors or timeouts.
+ * Failures use the same exception types as RestTemplate, so that callers can tell unknown codes from server errors.
+ */
+public class TerminologyHttpClient {
+
+	@FunctionalInterface
+	public interface ResponseReader<T> {
+		T read(InputStream body) throws IOException;
+	}
+
+	private static final String FHIR_JSON = "application/fhir+json";
+	private static final int ERROR_BODY_MAXIMUM_BYTES = 4096;
+
+	private final String baseUrl;
+	private final HttpClient httpClient;
+	private final ExecutorService readerExecutor;
+	private final int maximumConcurrentRequests;
+	private final CircuitBreaker circuitBreaker;
+
+	// Guarded by this
+	private int activeRequests;
+	private final Queue<Runnable> queuedRequests = new ArrayDeque<>();
+
+	private final LongAdder requestCount = new LongAdder();
+	private final LongAdder failureCount = new LongAdder();
+	private final LongAdder timeoutCount = new LongAdder();
+	private final LongAdder rejectedCount = new LongAdder();
+	private final LongAdder totalRequestTimeNanos = new LongAdder();
+
+	public TerminologyHttpClient(String baseUrl, Duration connectTimeout, int maximumConcurrentRequests, int readerThreads, CircuitBreaker circuitBreaker) {
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+		this.maximumConcurrentRequests = Math.max(1, maximumConcurrentRequests);
+		this.circuitBreaker = circuitBreaker;
+		httpClient = HttpClient.newBuilder()
+				.connectTimeout(connectTimeout)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.build();
+		AtomicInteger threadNumber = new AtomicInteger();
+		readerExecutor = Executors.newFixedThreadPool(Math.max(1, readerThreads), runnable -> {
+			Thread thread = new Thread(runnable, "terminology-http-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * @param path relative to the base URL, starting with a slash.
+	 * @param timeout time allowed for the whole request once it is sent, from sending the request to reading the last byte of the response.
+	 */
+	public <T> CompletableFuture<T> getAsync(String path, Duration timeout, ResponseReader<T> reader) {
+		return sendAsync(newRequest(path, timeout).GET().build(), timeout, reader);
+	}
+
+	public <T> CompletableFuture<T> postAsync(String path, byte[] body, Duration timeout, ResponseReader<T> reader) {
+		return sendAsync(newRequest(path, timeout)
+				.header("Content-Type", FHIR_JSON)
+				.POST(HttpRequest.BodyPublishers.ofByteArray(body))
+				.build(), timeout, reader);
+	}
+
+	public TerminologyHttpStats getStats() {
+		int active;
+		int queued;
+		synchronized (this) {
+			active = activeRequests;
+			queued = queuedRequests.size();
+		}
+		return new TerminologyHttpStats(maximumConcurrentRequests, active, queued, requestCount.sum(), failureCount.sum(), timeoutCount.sum(), totalRequestTimeNanos.sum(),
+				circuitBreaker.getState(), rejectedCount.sum());
+	}
+
+	public void shutdown() {
+		readerExecutor.shutdown();
+	}
+
+	private HttpRequest.Builder newRequest(String path, Duration timeout) {
+		return HttpRequest.newBuilder(URI.create(baseUrl + path))
+				.timeout(timeout)
+				.header("Accept", FHIR_JSON);
+	}
+
+	private <T> CompletableFuture<T> sendAsync(HttpRequest request, Duration timeout, ResponseReader<T> reader) {
+		if (!circuitBreaker.tryAcquire()) {
+			rejectedCount.increment();
+			return CompletableFuture.failedFuture(new ResourceAccessException(String.format("Terminology server circuit is open, %s request for \"%s\" not sent.",
+					request.method(), request.uri())));
+		}
+		CompletableFuture<T> result = new CompletableFuture<>();
+		Runnable send = () -> {
+			long start = System.nanoTime();
+			CompletableFuture<HttpResponse<InputStream>> response;
+			try {
+				response = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+			} catch (RuntimeException e) {
+				response = CompletableFuture.failedFuture(e);
+			}
+			CompletableFuture<HttpResponse<InputStream>> sentResponse = response;
+			response
+					.thenApplyAsync(httpResponse -> readResponse(request, httpResponse, reader), readerExecutor)
+					// The request timeout only covers the response headers, this deadline also covers reading the body
+					.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS)
+					.whenComplete((value, throwable) -> {
+						requestCount.increment();
+						totalRequestTimeNanos.add(System.nanoTime() - start);
+						startNextQueuedRequest();
+						if (throwable != null) {
+							failureCount.increment();
+							RestClientException exception = toRestClientException(request, throwable, timeout);
+							if (exception.getCause() instanceof HttpTimeoutException) {
+								timeoutCount.increment();
+								abandon(sentResponse);
+							}
+							// A rejected request still shows the server is up
+							if (exception instanceof HttpClientErrorException) {
+								circuitBreaker.recordSuccess();
+							} else {
+								circuitBreaker.recordFailure();
+							}
+							result.completeExceptionally(exception);
+						} else {
+							circuitBreaker.recordSuccess();
+							result.complete(value);
+						}
+					});
+		};
+		boolean sendNow;
+		synchronized (this) {
+			sendNow = activeRequests < maximumConcurrentRequests;
+			if (sendNow) {
+				activeRequests++;
+			} else {
+				queuedRequests.add(send);
+			}
+		}
+		if (sendNow) {
+			send.run();
+		}
+		return result;
+	}
+
+	private void startNextQueuedRequest() {
+		Runnable next;
+		synchronized (this) {
+			next = queuedRequests.poll();
+			if (next == null) {
+				activeRequests--;
+			}
+		}
+		if (next != null) {
+			next.run();
+		}
+	}
+
+	// Stops a request past its deadline, closing the body unblocks a reader thread that is waiting for the server
+	private static void abandon(CompletableFuture<HttpResponse<InputStream>> response) {
+		response.cancel(true);
+		response.thenAccept(httpResponse -> {
+			try {
+				httpResponse.body().close();
+			} catch (IOException e) {
+				// The request has already failed
+			}
+		});
+	}
+
+	private static <T> T readResponse(HttpRequest request, HttpResponse<InputStream> response, ResponseReader<T> reader) {
+		try (InputStream body = response.body()) {
+			int statusCode = response.statusCode();
+			if (statusCode >= 400) {
+				byte[] errorBody = body.readNBytes(ERROR_BODY_MAXIMUM_BYTES);
+				String statusText = String.format("%s %s returned status %s", request.method(), request.uri(), statusCode);
+				HttpStatusCode status = HttpStatusCode.valueOf(statusCode);
+				if (statusCode < 500) {
+					throw HttpClientErrorException.create(status, statusText, new HttpHeaders(), errorBody, StandardCharsets.UTF_8);
+				}
+				throw HttpServerErrorException.create(status, statusText, new HttpHeaders(), errorBody, StandardCharsets.UTF_8);
+			}
+			return reader.read(body);
+		} catch (IOException e) {
+			throw new ResourceAccessException(String.format("Failed to read response of %s %s: %s", request.method(), request.uri(), e.getMessage()), e);
+		}
+	}
+
+	private static RestClientException toRestClientException(HttpRequest request, Throwable throwable, Duration timeout) {
+		Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+		if (cause instanceof RestClientException restClientException) {
+			return restClientException;
+		}
+		if (cause instanceof TimeoutException) {
+			String message = String.format("%s request for \"%s\" did not complete within %s.", request.method(), request.uri(), timeout);
+			return new ResourceAccessException(message, new HttpTimeoutException(message));
+		}
+		if (cause instanceof IOException ioException) {
+			return new ResourceAccessException(String.format("I/O error on %s request for \"%s\": %s", request.method(), request.uri(), cause.getMessage()), ioException);
+		}
+		return new RestClientException(String.format("%s request for \"%s\" failed.", request.method(), request.uri()), cause);
+	}
+}
@@ -0,0 +1,73 @@
+package org.snomed.cdsservice.service.tsclient;
+
+public class TerminologyHttpStats {
+
+	private final int maximumConcurrentRequests;
+	private final int activeRequests;
+	private final int queuedRequests;
+	private final long requestCount;
+	private final long failureCount;
+	private final long timeoutCount;
+	private final long totalRequestTimeNanos;
+	private final CircuitBreaker.State circuitState;
+	private final long rejectedCount;
+
+	public TerminologyHttpStats(int maximumConcurrentRequests, int activeRequests, int queuedRequests, long requestCount, long failureCount, long timeoutCount,
+			long totalRequestTimeNanos, CircuitBreaker.State circuitState, long rejectedCount) {
+		this.maximumConcurrentRequests = maximumConcurrentRequests;
+		this.activeRequests = activeRequests;
+		this.queuedRequests = queuedRequests;
+		this.requestCount = requestCount;
+		this.failureCount = failureCount;
+		this.timeoutCount = timeoutCount;
+		this.totalRequestTimeNanos = totalRequestTimeNanos;
+		this.circuitState = circuitState;
+		this.rejectedCount = rejectedCount;
+	}
+
+	public int getMaximumConcurrentRequests() {
+		return maximumConcurrentRequests;
+	}
+
+	public int getActiveRequests() {
+		return activeRequests;
+	}
+
+	/**
+	 * @return the number of requests waiting for one of the active requests to finish.
+	 */
+	public int getQueuedRequests() {
+		return queuedRequests;
+	}
+
+	public long getRequestCount() {
+		return requestCount;
+	}
+
+	public long getFailureCount() {
+		return failureCount;
+	}
+
+	public long getTimeoutCount() {
+		return timeoutCount;
+	}
+
+	public long getTotalRequestTimeNanos() {
+		return totalRequestTimeNanos;
+	}
+
+	public double getAverageRequestTimeMillis() {
+		return requestCount == 0 ? 0 : totalRequestTimeNanos / 1_000_000.0 / requestCount;
+	}
+
+	public CircuitBreaker.State getCircuitState() {
+		return circuitState;
+	}
+
+	/**
+	 * @return the number of requests refused without being sent because the circuit was open.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount;
+	}
+}
@@ -1,18 +0,0 @@
-package org.snomed.cdsservice.service.tsclient;
-
-public class ValueSet {
-
-	private String resourceType;
-	private ValueSetExpansion expansion;
-
-	public ValueSet() {
-	}
-
-	public String getResourceType() {
-		return resourceType;
-	}
-
-	public ValueSetExpansion getExpansion() {
-		return expansion;
-	}
-}
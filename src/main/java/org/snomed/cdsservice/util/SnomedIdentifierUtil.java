@@ -0,0 +1,39 @@
+package org.snomed.cdsservice.util;
+
+public class SnomedIdentifierUtil {
+
+	public static final String SNOMEDCT_SYSTEM = "http://snomed.info/sct";
+
+	public static final long NOT_AN_SCTID = -1;
+
+	private static final int MIN_LENGTH = 6;
+	private static final int MAX_LENGTH = 18;
+
+	/**
+	 * Parses a SNOMED CT identifier into a long without throwing or allocating.
+	 * The check digit is not validated, this only guarantees that the value could be an SCTID.
+	 * @return the identifier, or {@link #NOT_AN_SCTID} if the code is not a number of the length permitted for an SCTID.
+	 */
+	public static long parseSctid(String code) {
+		if (code == null) {
+			return NOT_AN_SCTID;
+		}
+		int length = code.length();
+		if (length < MIN_LENGTH || length > MAX_LENGTH || code.charAt(0) == '0') {
+			return NOT_AN_SCTID;
+		}
+		long value = 0;
+		for (int i = 0; i < length; i++) {
+			char c = code.charAt(i);
+			if (c < '0' || c > '9') {
+				return NOT_AN_SCTID;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	public static boolean isSnomedSystem(String system) {
+		return SNOMEDCT_SYSTEM.equals(system);
+	}
+}
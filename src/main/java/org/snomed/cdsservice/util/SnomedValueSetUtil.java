@@ -2,6 +2,7 @@ package org.snomed.cdsservice.util;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
@@ -11,6 +12,9 @@ import java.util.stream.Stream;
 
 public class SnomedValueSetUtil {
 
+	private static final String ISA_VALUE_SET_PREFIX = "http://snomed.info/sct?fhir_vs=isa/";
+	private static final String ECL_VALUE_SET_PREFIX = "http://snomed.info/sct?fhir_vs=ecl/";
+
 	// Map of characters that will not be URL encoded to help ECL readability
 	private static final Map<String, String> eclDecodeForReadabililtyMap = Stream.of("<", ">", "(", ")", "|", "!")
 			.collect(Collectors.toMap(s -> URLEncoder.encode(s, StandardCharsets.UTF_8), Function.identity()));
@@ -26,7 +30,7 @@ public class SnomedValueSetUtil {
 			return getSnomedECLValueSetURI(ecl);
 		} else {
 			// This code and all descendants
-			return "http://snomed.info/sct?fhir_vs=isa/" + snomedCodeOrECL;
+			return ISA_VALUE_SET_PREFIX + snomedCodeOrECL;
 		}
 	}
 
@@ -36,7 +40,20 @@ public class SnomedValueSetUtil {
 		for (Map.Entry<String, String> decodeEntry : eclDecodeForReadabililtyMap.entrySet()) {
 			encodedECL = encodedECL.replace(decodeEntry.getKey(), decodeEntry.getValue());
 		}
-		return "http://snomed.info/sct?fhir_vs=ecl/" + encodedECL;
+		return ECL_VALUE_SET_PREFIX + encodedECL;
+	}
+
+	/**
+	 * Gets the ECL of a SNOMED CT implicit ValueSet URI created by this class.
+	 * @return The ECL, or null if the URI is not an 'isa' or 'ecl' SNOMED CT implicit ValueSet.
+	 */
+	public static String getECL(String valueSetURI) {
+		if (valueSetURI.startsWith(ECL_VALUE_SET_PREFIX)) {
+			return URLDecoder.decode(valueSetURI.substring(ECL_VALUE_SET_PREFIX.length()), StandardCharsets.UTF_8);
+		} else if (valueSetURI.startsWith(ISA_VALUE_SET_PREFIX)) {
+			return "<< " + valueSetURI.substring(ISA_VALUE_SET_PREFIX.length());
+		}
+		return null;
 	}
 
 }
@@ -0,0 +1,115 @@
+package org.snomed.cdsservice.model;
+
+import org.hl7.fhir.r4.model.Coding;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CDSTriggerIndexTest {
+
+	private static final String SNOMEDCT_SYSTEM = "http://snomed.info/sct";
+
+	@Test
+	void shouldCreateSameCardsInParallel() {
+		List<CDSTrigger> triggers = new ArrayList<>();
+		for (int i = 0; i < 20_000; i++) {
+			// Every third trigger contains the draft medication, every fifth contains the condition
+			String medicationCode = i % 3 == 0 ? "1145419005" : "100000" + i;
+			String conditionCode = i % 5 == 0 ? "235856003" : "200000" + i;
+			triggers.add(new MedicationConditionCDSTrigger(
+					"Medication " + i, CodeSet.builder().add(SNOMEDCT_SYSTEM, medicationCode).build(),
+					"Condition " + i, CodeSet.builder().add(SNOMEDCT_SYSTEM, conditionCode).build(),
+					new CDSCard("uuid-" + i, "{{RuleMedication}} / {{RuleCondition}}", "", CDSIndicator.warning, new CDSSource("Test"), null, null, "Contraindication")));
+		}
+		Set<Coding> conditions = Set.of(new Coding(SNOMEDCT_SYSTEM, "235856003", "Disease of liver"));
+		Set<Coding> medications = Set.of(new Coding(SNOMEDCT_SYSTEM, "1145419005", "Atorvastatin 10 mg oral tablet"));
+
+		CDSTriggerIndex index = new CDSTriggerIndex(triggers);
+		List<String> sequential = index.createRelevantCards(conditions, medications).stream().map(CDSCard::getSummary).toList();
+		index.setParallelEvaluationThreshold(1);
+		List<String> parallel = index.createRelevantCards(conditions, medications).stream().map(CDSCard::getSummary).toList();
+
+		assertEquals(1334, sequential.size());
+		assertEquals("Medication 0 / Condition 0", sequential.get(0));
+		assertEquals(sequential, parallel);
+	}
+
+	@Test
+	void shouldShareIdenticalValueSets() {
+		CodeSet acetazolamide = CodeSet.builder().add(SNOMEDCT_SYSTEM, "372709008").build();
+		List<CDSTrigger> triggers = List.of(
+				createTrigger("1", acetazolamide, CodeSet.builder().add(SNOMEDCT_SYSTEM, "387558006").build()),
+				createTrigger("2", CodeSet.builder().add(SNOMEDCT_SYSTEM, "372709008").build(), CodeSet.builder().add(SNOMEDCT_SYSTEM, "387135004").build()),
+				createTrigger("3", acetazolamide, CodeSet.builder().add(SNOMEDCT_SYSTEM, "387558006").build()));
+
+		CDSTriggerIndex index = new CDSTriggerIndex(triggers);
+
+		// One medication value set and two partner value sets, rows 1 and 3 form one unit
+		assertEquals(3, index.getValueSets().size());
+		assertEquals(List.of(acetazolamide), index.getMedicationValueSets());
+		assertEquals(2, index.getUnitCount());
+		Set<Coding> medications = Set.of(new Coding(SNOMEDCT_SYSTEM, "372709008", "Acetazolamide"), new Coding(SNOMEDCT_SYSTEM, "387558006", "Albendazole"));
+		assertEquals(List.of("1", "3"), index.createRelevantCards(medications, medications).stream().map(CDSCard::getUuid).toList());
+	}
+
+	@Test
+	void shouldMatchCodesFromOtherSystems() {
+		String atcSystem = "http://www.whocc.no/atc";
+		CDSTrigger trigger = createTrigger("1", CodeSet.builder().add(atcSystem, "S01EC01").add(SNOMEDCT_SYSTEM, "372709008").build(),
+				CodeSet.builder().add(atcSystem, "P02CA01").build());
+		CDSTriggerIndex index = new CDSTriggerIndex(List.of(trigger));
+
+		Set<Coding> medications = Set.of(new Coding(atcSystem, "S01EC01", "Acetazolamide"), new Coding(atcSystem, "P02CA01", "Albendazole"));
+		assertEquals(List.of("\"Acetazolamide\" with \"Albendazole\""), index.createRelevantCards(medications, medications).stream().map(CDSCard::getSummary).toList());
+		// Same code in another system, and a code that is not a SNOMED CT identifier
+		Set<Coding> otherSystem = Set.of(new Coding("http://example.com", "S01EC01", "Acetazolamide"), new Coding(SNOMEDCT_SYSTEM, "P02CA01", "Albendazole"));
+		assertTrue(index.createRelevantCards(otherSystem, otherSystem).isEmpty());
+	}
+
+	@Test
+	void shouldMatchCodeInValueSetsOfBothSides() {
+		CodeSet diuretics = CodeSet.builder().add(SNOMEDCT_SYSTEM, "372709008").add(SNOMEDCT_SYSTEM, "387135004").build();
+		CDSTriggerIndex index = new CDSTriggerIndex(List.of(createTrigger("1", diuretics, diuretics)));
+
+		// A medication interacting with itself is matched on both sides by the one draft medication
+		Set<Coding> medications = Set.of(new Coding(SNOMEDCT_SYSTEM, "372709008", "Acetazolamide"));
+		List<CDSCard> cards = index.createRelevantCards(medications, medications);
+		assertEquals(1, cards.size());
+		assertEquals("\"Acetazolamide\" with \"Acetazolamide\"", cards.get(0).getSummary());
+	}
+
+	@Test
+	void shouldCreateOneCardForDuplicateRequestCodes() {
+		CDSTriggerIndex index = new CDSTriggerIndex(List.of(
+				createTrigger("1", CodeSet.builder().add(SNOMEDCT_SYSTEM, "372709008").build(), CodeSet.builder().add(SNOMEDCT_SYSTEM, "387558006").build())));
+
+		// Coding does not implement equals, so the same code from two draft medications is held twice
+		Set<Coding> medications = Set.of(new Coding(SNOMEDCT_SYSTEM, "372709008", "Acetazolamide"), new Coding(SNOMEDCT_SYSTEM, "372709008", "Acetazolamide"),
+				new Coding(SNOMEDCT_SYSTEM, "387558006", "Albendazole"));
+		List<CDSCard> cards = index.createRelevantCards(medications, medications);
+		assertEquals(1, cards.size());
+		assertEquals("\"Acetazolamide\" with \"Albendazole\"", cards.get(0).getSummary());
+	}
+
+	@Test
+	void shouldCreateNoCardsForEmptyRequest() {
+		CDSTriggerIndex index = new CDSTriggerIndex(List.of(
+				createTrigger("1", CodeSet.builder().add(SNOMEDCT_SYSTEM, "372709008").build(), CodeSet.builder().add(SNOMEDCT_SYSTEM, "387558006").build())));
+		Set<Coding> medications = Set.of(new Coding(SNOMEDCT_SYSTEM, "372709008", "Acetazolamide"), new Coding(SNOMEDCT_SYSTEM, "387558006", "Albendazole"));
+
+		assertTrue(index.createRelevantCards(Set.of(), Set.of()).isEmpty());
+		assertTrue(index.createRelevantCards(Set.of(), medications).isEmpty());
+		assertTrue(index.createRelevantCards(medications, Set.of()).isEmpty());
+		assertTrue(new CDSTriggerIndex(List.of()).createRelevantCards(medications, medications).isEmpty());
+	}
+
+	private static CDSTrigger createTrigger(String uuid, CodeSet medication1Codes, CodeSet medication2Codes) {
+		return new MedicationInterationCDSTrigger("Medication 1", medication1Codes, "Medication 2", medication2Codes,
+				new CDSCard(uuid, "{{ActualMedication1}} with {{ActualMedication2}}", "", CDSIndicator.warning, new CDSSource("Test"), null, null, "Contraindication"));
+	}
+}
@@ -0,0 +1,35 @@
+package org.snomed.cdsservice.model;
+
+import org.hl7.fhir.r4.model.Coding;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+class CDSTriggerTest {
+
+	private static final String SNOMEDCT_SYSTEM = "http://snomed.info/sct";
+
+	@Test
+	void shouldReuseRenderedCardsAsSeparateInstances() {
+		CDSTrigger trigger = new MedicationInterationCDSTrigger("Medication 1", CodeSet.builder().add(SNOMEDCT_SYSTEM, "372709008").build(),
+				"Medication 2", CodeSet.builder().add(SNOMEDCT_SYSTEM, "387558006").build(),
+				new CDSCard("1", "{{ActualMedication1}} with {{ActualMedication2}}", "", CDSIndicator.warning, new CDSSource("Test"), null, null, "Contraindication"));
+		List<Coding> medications1 = List.of(new Coding(SNOMEDCT_SYSTEM, "372709008", "Acetazolamide"));
+		List<Coding> medications2 = List.of(new Coding(SNOMEDCT_SYSTEM, "387558006", "Albendazole"));
+
+		CDSCard first = trigger.createCard(medications1, medications2);
+		first.getReferenceMedications().get(0).setCoding(List.of(new CDSCoding("http://example.com", "1")));
+		first.getReferenceMedications().get(1).getCoding().add(new CDSCoding("http://example.com", "2"));
+		CDSCard second = trigger.createCard(medications1, medications2);
+
+		assertNotSame(first, second);
+		assertEquals("\"Acetazolamide\" with \"Albendazole\"", second.getSummary());
+		assertEquals("372709008", second.getReferenceMedications().get(0).getCoding().get(0).getCode());
+		assertEquals(List.of(new CDSCoding(SNOMEDCT_SYSTEM, "387558006")), second.getReferenceMedications().get(1).getCoding());
+		assertEquals("\"Acetazolamide (substance)\" with \"Albendazole\"",
+				trigger.createCard(List.of(new Coding(SNOMEDCT_SYSTEM, "372709008", "Acetazolamide (substance)")), medications2).getSummary());
+	}
+}
@@ -0,0 +1,45 @@
+package org.snomed.cdsservice.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardTextTemplateTest {
+
+	@Test
+	void shouldFillRuleAndRequestPlaceholders() {
+		CardTextTemplate template = CardTextTemplate.compile("{{RuleMedication}}: {{ActualMedication}} with {{ActualCondition}}, again {{ActualMedication}}",
+				Map.of("RuleMedication", "Atorvastatin"), "ActualMedication", "ActualCondition");
+
+		assertEquals("Atorvastatin: \"A\" with \"B\", again \"A\"", template.render("\"A\"", "\"B\""));
+		assertEquals("No placeholders", CardTextTemplate.compile("No placeholders", Map.of(), "A", "B").render("x", "y"));
+		assertNull(CardTextTemplate.compile(null, Map.of(), "A", "B"));
+	}
+
+	@Test
+	void shouldLeaveUnknownPlaceholdersInText() {
+		CardTextTemplate template = CardTextTemplate.compile("{{RuleCondition}} and {{Unknown}} with {{ActualMedication}}",
+				Map.of("RuleMedication", "Atorvastatin"), "ActualMedication", "ActualCondition");
+
+		assertEquals("{{RuleCondition}} and {{Unknown}} with A", template.render("A", "B"));
+	}
+
+	@Test
+	void shouldKeepLiteralBraces() {
+		CardTextTemplate template = CardTextTemplate.compile("{a} {{ {ActualMedication}} }} {{ActualMedication}} {{",
+				Map.of(), "ActualMedication", "ActualCondition");
+
+		assertEquals("{a} {{ {ActualMedication}} }} A {{", template.render("A", "B"));
+	}
+
+	@Test
+	void shouldNotExpandPlaceholdersInValues() {
+		// There is no escape syntax, values are inserted as they are and never parsed again
+		CardTextTemplate template = CardTextTemplate.compile("{{RuleMedication}} with {{ActualMedication}}",
+				Map.of("RuleMedication", "{{ActualMedication}}"), "ActualMedication", "ActualCondition");
+
+		assertEquals("{{ActualMedication}} with {{ActualCondition}}", template.render("{{ActualCondition}}", "B"));
+	}
+}
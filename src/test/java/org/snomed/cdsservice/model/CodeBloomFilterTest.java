@@ -0,0 +1,49 @@
+package org.snomed.cdsservice.model;
+
+import org.hl7.fhir.r4.model.Coding;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodeBloomFilterTest {
+
+	private static final String SNOMEDCT_SYSTEM = "http://snomed.info/sct";
+
+	@Test
+	void shouldFilterCodesNotInAnyCodeSet() {
+		CodeBloomFilter filter = CodeBloomFilter.of(List.of(
+				CodeSet.of(List.of(new Coding(SNOMEDCT_SYSTEM, "1145419005", null))),
+				CodeSet.of(List.of(new Coding(SNOMEDCT_SYSTEM, "235856003", null), new Coding("http://bahmni.org/cds", "36939d4e-d325-4819-9c81-91e1a0434f9a", null)))
+		));
+
+		assertTrue(filter.mightContain(new Coding(SNOMEDCT_SYSTEM, "1145419005", null), null));
+		assertTrue(filter.mightContain(new Coding(SNOMEDCT_SYSTEM, "235856003", null), null));
+		assertTrue(filter.mightContain(new Coding("http://bahmni.org/cds", "36939d4e-d325-4819-9c81-91e1a0434f9a", null), null));
+		assertFalse(filter.mightContainAny(List.of(
+				new Coding(SNOMEDCT_SYSTEM, "408051007", null),
+				new Coding("http://bahmni.org/cds", "1145419005", null),
+				new Coding(null, "1145419005", null)), null));
+	}
+
+	@Test
+	void shouldTestAncestorsWithHierarchy() throws IOException {
+		SnomedHierarchy hierarchy = SnomedHierarchy.load(Path.of("src/test/resources/hierarchy/sct2_Relationship_Snapshot.txt"));
+		CodeBloomFilter filter = CodeBloomFilter.of(List.of(CodeSet.builder().matchDescendants().addSnomedId(235856003L).build()));
+
+		Coding steatosisOfLiver = new Coding(SNOMEDCT_SYSTEM, "197321007", null);
+		assertFalse(filter.mightContain(steatosisOfLiver, null));
+		assertTrue(filter.mightContain(steatosisOfLiver, hierarchy));
+		assertFalse(filter.mightContain(new Coding(SNOMEDCT_SYSTEM, "64572001", null), hierarchy));
+	}
+
+	@Test
+	void shouldBeEmptyWithoutCodeSets() {
+		CodeBloomFilter filter = CodeBloomFilter.of(List.of());
+
+		assertFalse(filter.mightContain(new Coding(SNOMEDCT_SYSTEM, "1145419005", null), null));
+	}
+}
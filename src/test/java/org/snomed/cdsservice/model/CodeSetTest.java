@@ -0,0 +1,49 @@
+package org.snomed.cdsservice.model;
+
+import org.hl7.fhir.r4.model.Coding;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodeSetTest {
+
+	private static final String SNOMEDCT_SYSTEM = "http://snomed.info/sct";
+
+	@Test
+	void shouldMatchMembersBySystemAndCode() {
+		CodeSet codeSet = CodeSet.of(List.of(
+				new Coding(SNOMEDCT_SYSTEM, "235856003", "Disease of liver"),
+				new Coding(SNOMEDCT_SYSTEM, "197321007", "Steatosis of liver"),
+				new Coding(SNOMEDCT_SYSTEM, "197321007", "Steatosis of liver"),
+				new Coding("http://bahmni.org/cds", "36939d4e-d325-4819-9c81-91e1a0434f9a", null),
+				new Coding(SNOMEDCT_SYSTEM, "dummyCode", null)
+		));
+
+		assertEquals(4, codeSet.size());
+		assertTrue(codeSet.contains(SNOMEDCT_SYSTEM, "235856003"));
+		assertTrue(codeSet.contains(new Coding(SNOMEDCT_SYSTEM, "197321007", null)));
+		assertTrue(codeSet.contains("http://bahmni.org/cds", "36939d4e-d325-4819-9c81-91e1a0434f9a"));
+		assertTrue(codeSet.contains(SNOMEDCT_SYSTEM, "dummyCode"));
+
+		assertFalse(codeSet.contains(SNOMEDCT_SYSTEM, "1145419005"));
+		assertFalse(codeSet.contains("http://example.com", "235856003"));
+		assertFalse(codeSet.contains(null, "235856003"));
+		assertFalse(codeSet.contains(SNOMEDCT_SYSTEM, null));
+	}
+
+	@Test
+	void shouldHoldSnomedIdentifiersSortedAndUnique() {
+		CodeSet codeSet = CodeSet.builder()
+				.addSnomedId(1145419005L)
+				.addSnomedId(235856003L)
+				.addSnomedId(1145419005L)
+				.add(SNOMEDCT_SYSTEM, "197321007")
+				.build();
+
+		assertArrayEquals(new long[]{197321007L, 235856003L, 1145419005L}, codeSet.toSnomedIdArray());
+		assertEquals(3, codeSet.toCodings().size());
+		assertTrue(CodeSet.EMPTY.isEmpty());
+	}
+}
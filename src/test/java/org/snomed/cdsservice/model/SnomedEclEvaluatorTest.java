@@ -0,0 +1,78 @@
+package org.snomed.cdsservice.model;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.snomed.cdsservice.util.SnomedValueSetUtil;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnomedEclEvaluatorTest {
+
+	private static SnomedEclEvaluator evaluator;
+
+	@BeforeAll
+	static void loadSnapshot() throws IOException {
+		evaluator = new SnomedEclEvaluator(SnomedSnapshot.load(Path.of("src/test/resources/snapshot"), SnomedSnapshot.US_ENGLISH_LANGUAGE_REFSET));
+	}
+
+	@Test
+	void shouldEvaluateHierarchyOperators() {
+		assertArrayEquals(new long[]{385219001, 421026006, 736542009}, evaluate("<< 736542009 |Pharmaceutical dose form (dose form)|"));
+		assertArrayEquals(new long[]{385219001, 421026006}, evaluate("<736542009"));
+		assertArrayEquals(new long[]{373873005}, evaluate("<! 138875005 MINUS << 736542009 MINUS 387517004 MINUS 738956005 MINUS 738984000 MINUS 738995006 MINUS 740685003"));
+		assertArrayEquals(new long[]{138875005, 373873005, 763158003}, evaluate("> 322236009"));
+		assertArrayEquals(new long[]{322236009, 763158003}, evaluate(">>! 322236009"));
+		// Concepts that are not active match nothing
+		assertArrayEquals(new long[]{}, evaluate("<< 10000006"));
+	}
+
+	@Test
+	void shouldEvaluateRefinements() {
+		assertArrayEquals(new long[]{421026006},
+				evaluate("< 736542009 |Pharmaceutical dose form (dose form)| : 736474004 |Has dose form intended site| = <<738956005 |Oral|"));
+		assertArrayEquals(new long[]{385219001},
+				evaluate("< 736542009 : 736474004 = <<738984000, 736472000 = <<740685003 |Inject|"));
+		assertArrayEquals(new long[]{}, evaluate("< 736542009 : 736474004 = <<738984000 AND 736472000 = <<738995006"));
+		assertArrayEquals(new long[]{385219001, 421026006}, evaluate("< 736542009 : 736474004 = 738984000 OR 736472000 = 738995006"));
+		assertArrayEquals(new long[]{385219001}, evaluate("< 736542009 : 736474004 != 738956005"));
+	}
+
+	@Test
+	void shouldMatchAttributeGroupsTogether() {
+		assertArrayEquals(new long[]{322236009}, evaluate("< 763158003 : { 762949000 = 387517004, 732945000 = 258684004 }"));
+		// The dose form is not in the same group as the ingredient
+		assertArrayEquals(new long[]{}, evaluate("< 763158003 : { 762949000 = 387517004, 411116001 = * }"));
+		assertArrayEquals(new long[]{322236009}, evaluate("< 763158003 : 762949000 = 387517004, 411116001 = *"));
+	}
+
+	@Test
+	void shouldEvaluateCompoundExpressions() {
+		assertArrayEquals(new long[]{385219001, 387517004, 736542009}, evaluate("(<< 736542009 MINUS << 421026006) OR 387517004"));
+		assertArrayEquals(new long[]{421026006}, evaluate("<< 736542009 and (<< 138875005 : 736472000 = 738995006)"));
+	}
+
+	@Test
+	void shouldEvaluateEclOfImplicitValueSet() {
+		String ecl = "< 736542009 |Pharmaceutical dose form (dose form)| : 736474004 |Has dose form intended site| = <<738956005 |Oral|";
+		String valueSetEcl = SnomedValueSetUtil.getECL(SnomedValueSetUtil.getSnomedECLValueSetURI(ecl));
+		assertEquals(ecl, valueSetEcl);
+		assertArrayEquals(new long[]{421026006}, evaluate(valueSetEcl));
+		assertArrayEquals(new long[]{385219001, 421026006, 736542009}, evaluate(SnomedValueSetUtil.getECL(SnomedValueSetUtil.getSNOMEDValueSetURI("736542009"))));
+	}
+
+	@Test
+	void shouldRejectUnsupportedEcl() {
+		assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate("^ 723264001"));
+		assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate("< 763158003 : [1..1] 762949000 = *"));
+		assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate("< 763158003 : 1142135004 = #500"));
+		assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate("<< 736542009 MINUS"));
+		assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate("(<< 736542009"));
+	}
+
+	private static long[] evaluate(String ecl) {
+		return evaluator.evaluate(ecl).toSnomedIdArray();
+	}
+}
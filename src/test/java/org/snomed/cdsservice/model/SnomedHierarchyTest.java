@@ -0,0 +1,66 @@
+package org.snomed.cdsservice.model;
+
+import org.hl7.fhir.r4.model.Coding;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnomedHierarchyTest {
+
+	private static final String SNOMEDCT_SYSTEM = "http://snomed.info/sct";
+
+	@Test
+	void shouldLoadActiveIsARelationshipsOnly() throws IOException {
+		SnomedHierarchy hierarchy = SnomedHierarchy.load(Path.of("src/test/resources/hierarchy/sct2_Relationship_Snapshot.txt"));
+
+		List<Long> ancestorsOrSelf = new ArrayList<>();
+		hierarchy.forEachAncestorOrSelf(197321007L, ancestorsOrSelf::add);
+		assertEquals(List.of(197321007L, 235856003L, 64572001L, 404684003L), ancestorsOrSelf);
+
+		assertTrue(hierarchy.isAncestorOrSelf(235856003L, 197321007L));
+		assertFalse(hierarchy.isAncestorOrSelf(197321007L, 235856003L));
+		// Finding site attribute is not part of the hierarchy
+		assertFalse(hierarchy.isAncestorOrSelf(10200004L, 197321007L));
+	}
+
+	@Test
+	void shouldMatchDescendantsOfTriggerRootWithSubsumption() throws IOException {
+		SnomedHierarchy hierarchy = SnomedHierarchy.load(Path.of("src/test/resources/hierarchy/sct2_Relationship_Snapshot.txt"));
+		CDSTrigger trigger = new MedicationConditionCDSTrigger(
+				"Atorvastatin",
+				CodeSet.builder().add(SNOMEDCT_SYSTEM, "1145419005").build(),
+				"Disease of liver",
+				CodeSet.builder().matchDescendants().add(SNOMEDCT_SYSTEM, "235856003").build(),
+				new CDSCard("f1fc8e3c-4b1a-4d8c-a7a4-5b2e3b5a5d63", "Contraindication: {{RuleMedication}} with patient condition {{RuleCondition}}.", "", CDSIndicator.warning,
+						new CDSSource("Wikipedia"), null, null, "Contraindication"));
+		Set<Coding> conditions = Set.of(new Coding(SNOMEDCT_SYSTEM, "197321007", "Steatosis of liver"));
+		Set<Coding> medications = Set.of(new Coding(SNOMEDCT_SYSTEM, "1145419005", "Atorvastatin 10 mg oral tablet"));
+
+		assertEquals(1, new CDSTriggerIndex(List.of(trigger), hierarchy).createRelevantCards(conditions, medications).size());
+		assertTrue(new CDSTriggerIndex(List.of(trigger)).createRelevantCards(conditions, medications).isEmpty());
+	}
+
+	@Test
+	void shouldMatchExpandedEclExactlyWithSubsumption() throws IOException {
+		SnomedHierarchy hierarchy = SnomedHierarchy.load(Path.of("src/test/resources/hierarchy/sct2_Relationship_Snapshot.txt"));
+		// Expansion of '<< 64572001 |Disease| MINUS << 235856003 |Disease of liver|', the patient condition is an ancestor of the expansion
+		CDSTrigger trigger = new MedicationConditionCDSTrigger(
+				"Atorvastatin",
+				CodeSet.builder().matchDescendants().add(SNOMEDCT_SYSTEM, "1145419005").build(),
+				"Disease other than liver disease",
+				CodeSet.builder().add(SNOMEDCT_SYSTEM, "64572001").build(),
+				new CDSCard("f1fc8e3c-4b1a-4d8c-a7a4-5b2e3b5a5d63", "Contraindication: {{RuleMedication}} with patient condition {{RuleCondition}}.", "", CDSIndicator.warning,
+						new CDSSource("Wikipedia"), null, null, "Contraindication"));
+		Set<Coding> medications = Set.of(new Coding(SNOMEDCT_SYSTEM, "1145419005", "Atorvastatin 10 mg oral tablet"));
+		CDSTriggerIndex index = new CDSTriggerIndex(List.of(trigger), hierarchy);
+
+		assertTrue(index.createRelevantCards(Set.of(new Coding(SNOMEDCT_SYSTEM, "197321007", "Steatosis of liver")), medications).isEmpty());
+		assertEquals(1, index.createRelevantCards(Set.of(new Coding(SNOMEDCT_SYSTEM, "64572001", "Disease")), medications).size());
+	}
+}
@@ -0,0 +1,72 @@
+package org.snomed.cdsservice.model;
+
+import org.junit.jupiter.api.Test;
+import org.snomed.cdsservice.service.tsclient.ConceptParameters;
+import org.snomed.cdsservice.service.tsclient.SnomedConceptNormalForm;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnomedSnapshotTest {
+
+	private static final Path SNAPSHOT_DIRECTORY = Path.of("src/test/resources/snapshot");
+	private static final long GB_ENGLISH_LANGUAGE_REFSET = 900000000000508004L;
+
+	@Test
+	void shouldLoadActiveInferredContent() throws IOException {
+		SnomedSnapshot snapshot = SnomedSnapshot.load(SNAPSHOT_DIRECTORY, SnomedSnapshot.US_ENGLISH_LANGUAGE_REFSET);
+
+		assertEquals(19, snapshot.getConceptCount());
+		assertFalse(snapshot.contains(10000006L));
+		assertNull(snapshot.getNormalFormTerse(10000006L));
+
+		assertEquals("Acetaminophen 500 mg oral tablet", snapshot.getDisplay(322236009L));
+		// No preferred term, so the fully specified name is used
+		assertEquals("Paracetamol (substance)", snapshot.getDisplay(387517004L));
+
+		// Inactive and additional relationships are left out, concrete values are included
+		assertEquals("===763158003:411116001=421026006,1142139005=#1," +
+						"{732943007=387517004,732945000=258684004,732947008=732936001,762949000=387517004,1142135004=#500,1142136003=#1}",
+				snapshot.getNormalFormTerse(322236009L));
+		assertEquals("<<<373873005", snapshot.getNormalFormTerse(763158003L));
+	}
+
+	@Test
+	void shouldUseLanguageRefset() throws IOException {
+		SnomedSnapshot snapshot = SnomedSnapshot.load(SNAPSHOT_DIRECTORY, GB_ENGLISH_LANGUAGE_REFSET);
+
+		assertEquals("Paracetamol 500 mg oral tablet", snapshot.getDisplay(322236009L));
+	}
+
+	@Test
+	void shouldProduceNormalFormThatLookupsCanParse() throws IOException {
+		SnomedSnapshot snapshot = SnomedSnapshot.load(SNAPSHOT_DIRECTORY, SnomedSnapshot.US_ENGLISH_LANGUAGE_REFSET);
+
+		SnomedConceptNormalForm normalForm = new ConceptParameters("322236009", snapshot.getDisplay(322236009L), snapshot.getNormalFormTerse(322236009L), null)
+				.getNormalForm();
+		assertArrayEquals(new long[]{763158003L}, normalForm.getParentIds());
+		assertEquals("421026006", normalForm.getAttributes().get(411116001L));
+		assertEquals("1", normalForm.getAttributes().get(1142139005L));
+		assertEquals(1, normalForm.getAttributeGroups().size());
+		SnomedConceptNormalForm.AttributeGroup group = normalForm.getAttributeGroups().get(0);
+		assertEquals("387517004", group.get(732943007L));
+		assertEquals("500", group.get(1142135004L));
+		assertEquals("1", group.get(1142136003L));
+	}
+
+	@Test
+	void shouldServeAsHierarchyForSubsumption() throws IOException {
+		SnomedHierarchy hierarchy = SnomedSnapshot.load(SNAPSHOT_DIRECTORY, SnomedSnapshot.US_ENGLISH_LANGUAGE_REFSET);
+
+		List<Long> ancestorsOrSelf = new ArrayList<>();
+		hierarchy.forEachAncestorOrSelf(322236009L, ancestorsOrSelf::add);
+		assertEquals(List.of(322236009L, 763158003L, 373873005L, 138875005L), ancestorsOrSelf);
+		assertTrue(hierarchy.isAncestorOrSelf(373873005L, 322236009L));
+		// Attributes are not part of the hierarchy
+		assertFalse(hierarchy.isAncestorOrSelf(387517004L, 322236009L));
+	}
+}
@@ -3,9 +3,11 @@ package org.snomed.cdsservice.service.medication;
 import org.hl7.fhir.r4.model.Coding;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.Answers;
 import org.snomed.cdsservice.model.CDSCard;
 import org.snomed.cdsservice.model.CDSIndicator;
 import org.snomed.cdsservice.model.CDSTrigger;
+import org.snomed.cdsservice.model.CodeSet;
 import org.snomed.cdsservice.model.MedicationInterationCDSTrigger;
 import org.snomed.cdsservice.service.ServiceException;
 import org.snomed.cdsservice.service.tsclient.FHIRTerminologyServerClient;
@@ -14,7 +16,6 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.util.ReflectionTestUtils;
 
-import java.util.Collection;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -27,7 +28,8 @@ class MedicationCombinationRuleLoaderServiceTest {
 	@Autowired
 	private MedicationCombinationRuleLoaderService service;
 
-	@MockBean
+	// Value sets that are not stubbed expand to empty sets
+	@MockBean(answer = Answers.RETURNS_MOCKS)
 	private FHIRTerminologyServerClient mockTsClient;
 
 	@BeforeEach
@@ -36,13 +38,13 @@ class MedicationCombinationRuleLoaderServiceTest {
 		ReflectionTestUtils.setField(service, "tsvPath", "src/test/resources/test-rules/CDS_Medication-Medication_Cards.tsv");
 		
 		// Mock the terminology server responses for each medication
-		when(mockTsClient.expandValueSet(eq("http://snomed.info/sct?fhir_vs=isa/33664007"))).thenReturn(List.of(
+		when(mockTsClient.expandValueSet(eq("http://snomed.info/sct?fhir_vs=isa/33664007"))).thenReturn(CodeSet.of(List.of(
 			new Coding("http://snomed.info/sct", "33664007", "Acetazolamide")
-		));
+		)));
 		
-		when(mockTsClient.expandValueSet(eq("http://snomed.info/sct?fhir_vs=isa/96119002"))).thenReturn(List.of(
+		when(mockTsClient.expandValueSet(eq("http://snomed.info/sct?fhir_vs=isa/96119002"))).thenReturn(CodeSet.of(List.of(
 			new Coding("http://snomed.info/sct", "96119002", "Albendazole")
-		));
+		)));
 	}
 
 	@Test
@@ -95,21 +97,17 @@ class MedicationCombinationRuleLoaderServiceTest {
 
 		// Verify SNOMED code processing
 		MedicationInterationCDSTrigger trigger = (MedicationInterationCDSTrigger) triggers.get(0);
-		Collection<Coding> medication1Codings = trigger.getMedicationCodings();
-		Collection<Coding> medication2Codings = trigger.getMedication2Codings();
+		CodeSet medication1Codes = trigger.getMedicationCodes();
+		CodeSet medication2Codes = trigger.getMedication2Codes();
 
-		assertFalse(medication1Codings.isEmpty());
-		assertFalse(medication2Codings.isEmpty());
+		assertFalse(medication1Codes.isEmpty());
+		assertFalse(medication2Codes.isEmpty());
 
 		// Verify coding values
-		Coding medication1Coding = medication1Codings.iterator().next();
-		assertEquals("http://snomed.info/sct", medication1Coding.getSystem());
-		assertEquals("33664007", medication1Coding.getCode());
-		assertEquals("Acetazolamide", medication1Coding.getDisplay());
-
-		Coding medication2Coding = medication2Codings.iterator().next();
-		assertEquals("http://snomed.info/sct", medication2Coding.getSystem());
-		assertEquals("96119002", medication2Coding.getCode());
-		assertEquals("Albendazole", medication2Coding.getDisplay());
+		assertEquals(1, medication1Codes.size());
+		assertTrue(medication1Codes.contains("http://snomed.info/sct", "33664007"));
+
+		assertEquals(1, medication2Codes.size());
+		assertTrue(medication2Codes.contains("http://snomed.info/sct", "96119002"));
 	}
 }
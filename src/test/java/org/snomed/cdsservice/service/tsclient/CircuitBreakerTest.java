@@ -0,0 +1,36 @@
+package org.snomed.cdsservice.service.tsclient;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+	@Test
+	void shouldRefuseCallsWhileOpenThenLetOneTrialThrough() {
+		AtomicLong time = new AtomicLong();
+		CircuitBreaker circuitBreaker = new CircuitBreaker("test", 2, Duration.ofNanos(100), time::get);
+
+		assertTrue(circuitBreaker.tryAcquire());
+		circuitBreaker.recordFailure();
+		assertTrue(circuitBreaker.tryAcquire());
+		circuitBreaker.recordFailure();
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+		assertFalse(circuitBreaker.tryAcquire());
+
+		time.set(100);
+		assertTrue(circuitBreaker.tryAcquire());
+		assertFalse(circuitBreaker.tryAcquire());
+		circuitBreaker.recordFailure();
+		assertFalse(circuitBreaker.tryAcquire());
+
+		time.set(200);
+		assertTrue(circuitBreaker.tryAcquire());
+		circuitBreaker.recordSuccess();
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+		assertTrue(circuitBreaker.tryAcquire());
+	}
+}
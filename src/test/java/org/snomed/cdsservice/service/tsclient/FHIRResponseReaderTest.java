@@ -0,0 +1,66 @@
+package org.snomed.cdsservice.service.tsclient;
+
+import org.junit.jupiter.api.Test;
+import org.snomed.cdsservice.model.CodeSet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FHIRResponseReaderTest {
+
+	@Test
+	void shouldReadLookupValuesUsed() throws IOException {
+		ConceptParameters conceptParameters = FHIRResponseReader.readLookup("""
+				{"resourceType":"Parameters","parameter":[
+					{"name":"display","valueString":"Ramipril 5 mg oral tablet"},
+					{"valueString":"408051007","name":"code"},
+					{"name":"designation","part":[{"name":"use","valueCoding":{"system":"http://snomed.info/sct","code":"900000000000003001"}},{"name":"value","valueString":"Product containing precisely ramipril 5 milligram/1 each conventional release oral tablet (clinical drug)"}]},
+					{"name":"property","part":[{"name":"code","valueString":"normalForm"},{"name":"valueString","valueString":"763158003|Medicinal product|"}]},
+					{"name":"property","part":[{"name":"valueString","valueString":"===763158003:411116001=421026006"},{"name":"code","valueCode":"normalFormTerse"}]}
+				]}""");
+
+		assertEquals("408051007", conceptParameters.getCode());
+		assertEquals("Ramipril 5 mg oral tablet", conceptParameters.getDisplay());
+		assertEquals("===763158003:411116001=421026006", conceptParameters.getNormalFormTerse());
+	}
+
+	@Test
+	void shouldReadExpansionCodesIntoCodeSet() throws IOException {
+		String json = """
+				{"resourceType":"ValueSet","expansion":{"parameter":[{"name":"version","valueUri":"http://snomed.info/sct/900000000000207008"}],"total":3,"offset":0,
+					"contains":[
+						{"system":"http://snomed.info/sct","code":"235856003","display":"Disease of liver","designation":[{"value":"Hepatopathy"}]},
+						{"system":"http://snomed.info/sct","code":"197321007","contains":[{"system":"http://snomed.info/sct","code":"1145419005"}]}
+					]}}""";
+		CodeSet.Builder codes = CodeSet.builder();
+
+		FHIRResponseReader.ExpansionPage page = FHIRResponseReader.readExpansionPage(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), codes);
+
+		assertEquals(3, page.getTotal());
+		assertEquals(2, page.getCount());
+		assertEquals("http://snomed.info/sct/900000000000207008", page.getVersion());
+		assertArrayEquals(new long[]{197321007L, 235856003L, 1145419005L}, codes.build().toSnomedIdArray());
+	}
+
+	@Test
+	void shouldCountTopLevelEntriesOfHierarchicalExpansionForPaging() throws IOException {
+		String json = """
+				{"resourceType":"ValueSet","expansion":{"total":2,"offset":0,
+					"contains":[
+						{"system":"http://snomed.info/sct","code":"235856003","contains":[
+							{"system":"http://snomed.info/sct","code":"197321007","contains":[{"system":"http://snomed.info/sct","code":"1145419005"}]},
+							{"system":"http://snomed.info/sct","code":"64572001"}
+						]},
+						{"system":"http://snomed.info/sct","code":"408051007"}
+					]}}""";
+		CodeSet.Builder codes = CodeSet.builder();
+
+		FHIRResponseReader.ExpansionPage page = FHIRResponseReader.readExpansionPage(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), codes);
+
+		assertEquals(2, page.getCount());
+		assertArrayEquals(new long[]{64572001L, 197321007L, 235856003L, 408051007L, 1145419005L}, codes.build().toSnomedIdArray());
+	}
+}
@@ -0,0 +1,201 @@
+package org.snomed.cdsservice.service.tsclient;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.snomed.cdsservice.model.CodeSet;
+import org.snomed.cdsservice.model.SnomedSnapshot;
+import org.snomed.cdsservice.service.hierarchy.SnomedSnapshotService;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FHIRTerminologyServerClientTest {
+
+	private static final String SNOMEDCT_SYSTEM = "http://snomed.info/sct";
+	private static final int EXPANSION_SIZE = 5;
+
+	private HttpServer server;
+	private final List<String> requests = new CopyOnWriteArrayList<>();
+	private FHIRTerminologyServerClient client;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+			requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI() + " " + body);
+			if ("POST".equals(exchange.getRequestMethod()) && body.contains("code=rejected")) {
+				respond(exchange, 429, "{\"resourceType\":\"OperationOutcome\"}");
+			} else if ("POST".equals(exchange.getRequestMethod()) && body.contains("code=unsupported")) {
+				respond(exchange, 405, "{\"resourceType\":\"OperationOutcome\"}");
+			} else if ("POST".equals(exchange.getRequestMethod())) {
+				respond(exchange, 200, """
+						{"resourceType":"Bundle","type":"batch-response","entry":[
+							{"resource":{"resourceType":"Parameters","parameter":[{"name":"code","valueString":"258684004"},{"name":"display","valueString":"mg"}]},"response":{"status":"200 OK"}},
+							{"response":{"status":"404 Not Found"},"resource":{"resourceType":"OperationOutcome","issue":[{"severity":"error","code":"not-found"}]}}
+						]}""");
+			} else if (exchange.getRequestURI().getQuery().contains("code=slow")) {
+				try {
+					Thread.sleep(2000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				respond(exchange, 200, "{\"resourceType\":\"Parameters\"}");
+			} else if (exchange.getRequestURI().getQuery().contains("code=stalled")) {
+				// Headers straight away, then the body stalls
+				exchange.sendResponseHeaders(200, 0);
+				try (OutputStream outputStream = exchange.getResponseBody()) {
+					outputStream.write("{\"resourceType\":".getBytes(StandardCharsets.UTF_8));
+					outputStream.flush();
+					Thread.sleep(2000);
+					outputStream.write("\"Parameters\"}".getBytes(StandardCharsets.UTF_8));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (IOException e) {
+					// The client has given up on the response
+				}
+			} else if (exchange.getRequestURI().getPath().equals("/ValueSet/$expand")) {
+				// Pages of at most two codes, whatever size is requested
+				int offset = Integer.parseInt(exchange.getRequestURI().getQuery().replaceAll(".*offset=(\\d+).*", "$1"));
+				StringBuilder contains = new StringBuilder();
+				for (int code = offset; code < Math.min(offset + 2, EXPANSION_SIZE); code++) {
+					contains.append(contains.isEmpty() ? "" : ",").append("{\"system\":\"http://snomed.info/sct\",\"code\":\"").append(100000 + code).append("\"}");
+				}
+				respond(exchange, 200, "{\"resourceType\":\"ValueSet\",\"expansion\":{\"total\":" + EXPANSION_SIZE + ",\"contains\":[" + contains + "]}}");
+			} else {
+				respond(exchange, 404, "{\"resourceType\":\"OperationOutcome\"}");
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		client = new FHIRTerminologyServerClient("http://localhost:" + server.getAddress().getPort(), 1000, 1000, Duration.ofDays(1), Duration.ZERO, Duration.ZERO, Duration.ofMillis(20), 50, 2, "",
+				Duration.ofSeconds(5), Duration.ofMillis(500), Duration.ofSeconds(5), 8, 2, 5, Duration.ofSeconds(30));
+	}
+
+	@AfterEach
+	void stopServer() {
+		client.shutdown();
+		server.stop(0);
+	}
+
+	@Test
+	void shouldLookUpMissesInOneBatch() {
+		Map<String, ConceptParameters> lookups = client.lookupAll(SNOMEDCT_SYSTEM, List.of("258684004", "9999999999", "258684004"));
+
+		assertEquals(1, requests.size());
+		assertTrue(requests.get(0).startsWith("POST / "));
+		assertTrue(requests.get(0).contains("CodeSystem/$lookup?system=http%3A%2F%2Fsnomed.info%2Fsct&code=9999999999&property=*"));
+		assertEquals(1, lookups.size());
+		assertEquals("mg", lookups.get("258684004").getDisplay());
+
+		// Cached
+		assertEquals("mg", client.lookup(SNOMEDCT_SYSTEM, "258684004").getDisplay());
+		assertEquals(1, requests.size());
+
+		// A single miss is looked up without a batch
+		assertThrows(HttpClientErrorException.class, () -> client.lookup(SNOMEDCT_SYSTEM, "9999999999"));
+		assertTrue(requests.get(1).startsWith("GET /CodeSystem/$lookup"));
+	}
+
+	@Test
+	void shouldFailLookupsMissingFromBatchResponseAsServerFault() {
+		CompletableFuture<ConceptParameters> first = client.lookupAsync(SNOMEDCT_SYSTEM, "258684004");
+		CompletableFuture<ConceptParameters> second = client.lookupAsync(SNOMEDCT_SYSTEM, "9999999999");
+		CompletableFuture<ConceptParameters> third = client.lookupAsync(SNOMEDCT_SYSTEM, "258685003");
+
+		assertEquals("mg", TerminologyCache.join(first).getDisplay());
+		assertThrows(HttpClientErrorException.class, () -> TerminologyCache.join(second));
+		assertThrows(ResourceAccessException.class, () -> TerminologyCache.join(third));
+		assertEquals(1, requests.size());
+	}
+
+	@Test
+	void shouldKeepBatchingAfterTransientRejection() {
+		client.lookupAll(SNOMEDCT_SYSTEM, List.of("rejected", "258684004"));
+		assertTrue(requests.get(0).startsWith("POST / "));
+		assertEquals(3, requests.size());
+
+		client.lookupAll(SNOMEDCT_SYSTEM, List.of("10000006", "9999999999"));
+		assertTrue(requests.get(3).startsWith("POST / "));
+	}
+
+	@Test
+	void shouldStopBatchingWhenServerDoesNotSupportBatches() {
+		client.lookupAll(SNOMEDCT_SYSTEM, List.of("unsupported", "258684004"));
+		assertEquals(3, requests.size());
+
+		client.lookupAll(SNOMEDCT_SYSTEM, List.of("10000006", "9999999999"));
+		assertEquals(5, requests.size());
+		assertTrue(requests.stream().skip(1).allMatch(request -> request.startsWith("GET /CodeSystem/$lookup")));
+	}
+
+	@Test
+	void shouldFetchRemainingExpansionPagesUsingFirstPageSize() {
+		CodeSet codes = client.expandValueSet("http://snomed.info/sct?fhir_vs=ecl/<<763158003");
+
+		assertArrayEquals(new long[]{100000, 100001, 100002, 100003, 100004}, codes.toSnomedIdArray());
+		assertEquals(3, requests.size());
+	}
+
+	@Test
+	void shouldFailLookupWhenServerDoesNotRespondInTime() {
+		CompletableFuture<ConceptParameters> lookup = client.lookupAsync(SNOMEDCT_SYSTEM, "slow");
+
+		assertThrows(ResourceAccessException.class, () -> TerminologyCache.join(lookup));
+		TerminologyHttpStats stats = client.getHttpStats();
+		assertEquals(1, stats.getTimeoutCount());
+		assertEquals(0, stats.getActiveRequests());
+	}
+
+	@Test
+	void shouldFailLookupWhenResponseBodyIsNotReadInTime() {
+		CompletableFuture<ConceptParameters> lookup = client.lookupAsync(SNOMEDCT_SYSTEM, "stalled");
+
+		ResourceAccessException exception = assertThrows(ResourceAccessException.class, () -> TerminologyCache.join(lookup));
+		assertTrue(exception.getMessage().contains("did not complete within"));
+		TerminologyHttpStats stats = client.getHttpStats();
+		assertEquals(1, stats.getTimeoutCount());
+		assertEquals(0, stats.getActiveRequests());
+	}
+
+	@Test
+	void shouldAnswerSnomedLookupsFromLocalSnapshot() throws IOException {
+		SnomedSnapshotService snapshotService = new SnomedSnapshotService();
+		snapshotService.setSnapshot(SnomedSnapshot.load(Path.of("src/test/resources/snapshot"), SnomedSnapshot.US_ENGLISH_LANGUAGE_REFSET));
+		client.setSnapshotService(snapshotService);
+
+		ConceptParameters conceptParameters = client.lookup(SNOMEDCT_SYSTEM, "322236009");
+		assertEquals("Acetaminophen 500 mg oral tablet", conceptParameters.getDisplay());
+		assertEquals("500", conceptParameters.getNormalForm().getAttributeGroups().get(0).get(1142135004L));
+		assertTrue(requests.isEmpty());
+
+		// Concepts that are not active in the snapshot fall back to the server
+		assertEquals("mg", client.lookupAll(SNOMEDCT_SYSTEM, List.of("10000006", "9999999999")).get("10000006").getDisplay());
+		assertEquals(1, requests.size());
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/fhir+json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream outputStream = exchange.getResponseBody()) {
+			outputStream.write(bytes);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package org.snomed.cdsservice.service.tsclient;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnomedConceptNormalFormTest {
+
+	@Test
+	void shouldParseParentsAttributesAndGroups() {
+		SnomedConceptNormalForm normalForm = SnomedConceptNormalForm.parse("===763158003 + 373873005:411116001=421026006,1142139005=#1," +
+				"{732943007=387517004,1142135004=#2.5,732945000=258684004},{732943007=372756006, 1142135004 = #10}");
+
+		assertArrayEquals(new long[]{763158003L, 373873005L}, normalForm.getParentIds());
+		assertTrue(normalForm.hasParent(373873005L));
+		assertEquals(2, normalForm.getAttributes().size());
+		assertEquals("421026006", normalForm.getAttributes().get(411116001L));
+		assertEquals("1", normalForm.getAttributes().get(1142139005L));
+		assertNull(normalForm.getAttributes().get(732943007L));
+
+		assertEquals(2, normalForm.getAttributeGroups().size());
+		SnomedConceptNormalForm.AttributeGroup first = normalForm.getAttributeGroups().get(0);
+		assertEquals("387517004", first.get(732943007L));
+		assertEquals("2.5", first.get(1142135004L));
+		assertEquals("258684004", first.get(732945000L));
+		SnomedConceptNormalForm.AttributeGroup second = normalForm.getAttributeGroups().get(1);
+		assertEquals("372756006", second.get(732943007L));
+		assertEquals("10", second.get(1142135004L));
+		assertFalse(second.contains(732945000L));
+	}
+
+	@Test
+	void shouldParseNormalFormWithoutAttributes() {
+		SnomedConceptNormalForm normalForm = SnomedConceptNormalForm.parse("<<<258681007");
+
+		assertArrayEquals(new long[]{258681007L}, normalForm.getParentIds());
+		assertEquals(0, normalForm.getAttributes().size());
+		assertTrue(normalForm.getAttributeGroups().isEmpty());
+	}
+
+	@Test
+	void shouldUseLastValueOfRepeatedAttributeType() {
+		SnomedConceptNormalForm normalForm = SnomedConceptNormalForm.parse("===763158003:411116001=385219001,411116001=421026006,{1142135004=#2.5,1142135004=#10}");
+
+		assertEquals("421026006", normalForm.getAttributes().get(411116001L));
+		assertEquals("10", normalForm.getAttributeGroups().get(0).get(1142135004L));
+	}
+
+	@Test
+	void shouldRejectTextThatIsNotANormalForm() {
+		assertThrows(IllegalArgumentException.class, () -> SnomedConceptNormalForm.parse("===763158003:411116001"));
+		assertThrows(IllegalArgumentException.class, () -> SnomedConceptNormalForm.parse("===763158003:{732943007=387517004"));
+		assertThrows(IllegalArgumentException.class, () -> SnomedConceptNormalForm.parse("Medicinal product"));
+	}
+
+	@Test
+	void shouldKeepParsedNormalFormWithLookup() {
+		ConceptParameters conceptParameters = new ConceptParameters("408051007", "Ramipril 5 mg oral tablet", "===763158003:411116001=421026006", null);
+
+		assertSame(conceptParameters.getNormalForm(), conceptParameters.getNormalForm());
+		assertThrows(ResponseStatusException.class, () -> new ConceptParameters("408051007", null, "===763158003:", null).getNormalForm());
+	}
+}
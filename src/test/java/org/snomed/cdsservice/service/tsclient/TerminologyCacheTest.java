@@ -0,0 +1,156 @@
+package org.snomed.cdsservice.service.tsclient;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TerminologyCacheTest {
+
+	@Test
+	void shouldEvictLeastRecentlyUsedAboveMaximumWeight() {
+		TerminologyCache<String, String> cache = new TerminologyCache<>("test", 5, String::length, null);
+		cache.put("a", "aa");
+		cache.put("b", "bb");
+		assertEquals("aa", get(cache, "a", key -> null));
+		cache.put("c", "cc");
+
+		assertNull(get(cache, "b", key -> null));
+		assertEquals("aa", get(cache, "a", key -> null));
+		assertEquals("cc", get(cache, "c", key -> null));
+
+		TerminologyCacheStats stats = cache.getStats();
+		assertEquals(2, stats.getSize());
+		assertEquals(4, stats.getWeight());
+		assertEquals(3, stats.getHitCount());
+		assertEquals(1, stats.getMissCount());
+		assertEquals(1, stats.getEvictionCount());
+	}
+
+	@Test
+	void shouldLoadAgainAfterTimeToLive() {
+		AtomicLong time = new AtomicLong();
+		AtomicLong loads = new AtomicLong();
+		TerminologyCache<String, Long> cache = new TerminologyCache<>("test", 10, value -> 1, Duration.ofNanos(100), time::get);
+
+		assertEquals(1, get(cache, "a", key -> loads.incrementAndGet()));
+		time.set(99);
+		assertEquals(1, get(cache, "a", key -> loads.incrementAndGet()));
+		time.set(100);
+		assertEquals(2, get(cache, "a", key -> loads.incrementAndGet()));
+		assertEquals(2, cache.getStats().getLoadCount());
+	}
+
+	@Test
+	void shouldNotCacheLoadFailures() {
+		TerminologyCache<String, String> cache = new TerminologyCache<>("test", 10, value -> 1, null);
+
+		assertThrows(IllegalStateException.class, () -> get(cache, "a", key -> {
+			throw new IllegalStateException("Terminology server unavailable");
+		}));
+		assertEquals("A", get(cache, "a", String::toUpperCase));
+		assertEquals(1, cache.getStats().getLoadFailureCount());
+	}
+
+	@Test
+	void shouldCacheLoadFailuresForFailureTimeToLive() {
+		AtomicLong time = new AtomicLong();
+		AtomicInteger loads = new AtomicInteger();
+		TerminologyCache<String, String> cache = new TerminologyCache<>("test", 10, value -> 1, Duration.ofNanos(1000), null, Duration.ofNanos(100),
+				failure -> failure instanceof IllegalStateException, time::get);
+		Function<String, String> failingLoader = key -> {
+			loads.incrementAndGet();
+			throw new IllegalStateException("Unknown code");
+		};
+
+		assertThrows(IllegalStateException.class, () -> get(cache, "a", failingLoader));
+		time.set(99);
+		assertThrows(IllegalStateException.class, () -> get(cache, "a", String::toUpperCase));
+		assertEquals(1, loads.get());
+		assertEquals(1, cache.getStats().getFailureHitCount());
+
+		time.set(100);
+		assertEquals("A", get(cache, "a", String::toUpperCase));
+		time.set(999);
+		assertEquals("A", get(cache, "a", failingLoader));
+	}
+
+	@Test
+	void shouldServeStaleValueWhileLoadingAgain() {
+		AtomicLong time = new AtomicLong();
+		TerminologyCache<String, String> cache = new TerminologyCache<>("test", 10, value -> 1, Duration.ofNanos(100), Duration.ofNanos(100), null,
+				failure -> false, time::get);
+		cache.put("a", "A");
+		time.set(150);
+		CompletableFuture<String> reload = new CompletableFuture<>();
+
+		assertEquals("A", cache.getAsync("a", key -> reload).join());
+		assertEquals(1, cache.getStats().getStaleHitCount());
+		reload.completeExceptionally(new IllegalStateException("Terminology server unavailable"));
+		assertEquals("A", cache.getAsync("a", key -> CompletableFuture.completedFuture("B")).join());
+		assertEquals("B", cache.getAsync("a", key -> CompletableFuture.completedFuture("C")).join());
+
+		time.set(400);
+		assertEquals("D", cache.getAsync("a", key -> CompletableFuture.completedFuture("D")).join());
+	}
+
+	@Test
+	void shouldKeepStaleValueWhenReloadFailureIsCached() {
+		AtomicLong time = new AtomicLong();
+		TerminologyCache<String, String> cache = new TerminologyCache<>("test", 10, value -> 1, Duration.ofNanos(100), Duration.ofNanos(100), Duration.ofNanos(1000),
+				HttpClientErrorException.class::isInstance, time::get);
+		cache.put("a", "A");
+		time.set(150);
+
+		assertEquals("A", cache.getAsync("a", key -> CompletableFuture.failedFuture(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null))).join());
+		assertEquals("A", cache.getAsync("a", key -> new CompletableFuture<>()).join());
+	}
+
+	@Test
+	void shouldGiveEachCallerItsOwnCachedFailure() {
+		TerminologyCache<String, String> cache = new TerminologyCache<>("test", 10, value -> 1, null, null, Duration.ofDays(1),
+				HttpClientErrorException.class::isInstance);
+		HttpClientErrorException notFound = HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null);
+		assertSame(notFound, assertThrows(HttpClientErrorException.class, () -> TerminologyCache.join(cache.getAsync("a", key -> CompletableFuture.failedFuture(notFound)))));
+
+		HttpClientErrorException first = assertThrows(HttpClientErrorException.class, () -> get(cache, "a", String::toUpperCase));
+		HttpClientErrorException second = assertThrows(HttpClientErrorException.class, () -> get(cache, "a", String::toUpperCase));
+		assertNotSame(first, second);
+		assertSame(notFound, first.getCause());
+		assertEquals(HttpStatus.NOT_FOUND, first.getStatusCode());
+	}
+
+	@Test
+	void shouldLoadOnceForConcurrentMisses() {
+		TerminologyCache<String, String> cache = new TerminologyCache<>("test", 10, value -> 1, null);
+		AtomicInteger loads = new AtomicInteger();
+		CompletableFuture<String> load = new CompletableFuture<>();
+
+		CompletableFuture<String> first = cache.getAsync("a", key -> {
+			loads.incrementAndGet();
+			return load;
+		});
+		CompletableFuture<String> second = cache.getAsync("a", key -> {
+			loads.incrementAndGet();
+			return CompletableFuture.completedFuture("B");
+		});
+		assertFalse(second.isDone());
+		load.complete("A");
+
+		assertEquals("A", first.join());
+		assertEquals("A", second.join());
+		assertEquals(1, loads.get());
+		assertEquals(1, cache.getStats().getCoalescedLoadCount());
+	}
+
+	private static <V> V get(TerminologyCache<String, V> cache, String key, Function<String, V> loader) {
+		return TerminologyCache.join(cache.getAsync(key, k -> CompletableFuture.completedFuture(loader.apply(k))));
+	}
+}
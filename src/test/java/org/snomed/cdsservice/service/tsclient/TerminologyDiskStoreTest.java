@@ -0,0 +1,151 @@
+package org.snomed.cdsservice.service.tsclient;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.snomed.cdsservice.model.CodeSet;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TerminologyDiskStoreTest {
+
+	private static final String SERVER_URL = "http://localhost/fhir";
+	private static final String VERSION = "http://snomed.info/sct/900000000000207008/version/20230131";
+
+	@TempDir
+	Path tempDir;
+
+	private final Map<String, ConceptParameters> lookups = new HashMap<>();
+	private final Map<String, CodeSet> expansions = new HashMap<>();
+
+	@Test
+	void shouldReadResultsWrittenBeforeRestart() {
+		Path file = tempDir.resolve("terminology.bin");
+		TerminologyDiskStore store = load(file, SERVER_URL);
+		store.updateVersion(VERSION);
+		store.putLookup("http://snomed.info/sct|408051007", new ConceptParameters("408051007", "Ramipril 5 mg oral tablet", "===763158003:411116001=421026006", VERSION));
+		store.putExpansion("http://snomed.info/sct?fhir_vs=ecl/<<763158003", CodeSet.builder().addSnomedId(408051007L).add("http://loinc.org", "1234-5").build());
+		store.close();
+
+		TerminologyDiskStore reloaded = load(file, SERVER_URL);
+
+		assertEquals(VERSION, reloaded.getEditionVersion());
+		assertEquals("Ramipril 5 mg oral tablet", lookups.get("http://snomed.info/sct|408051007").getDisplay());
+		assertEquals("===763158003:411116001=421026006", lookups.get("http://snomed.info/sct|408051007").getNormalFormTerse());
+		CodeSet codes = expansions.get("http://snomed.info/sct?fhir_vs=ecl/<<763158003");
+		assertTrue(codes.containsSnomedId(408051007L));
+		assertTrue(codes.contains("http://loinc.org", "1234-5"));
+	}
+
+	@Test
+	void shouldIgnoreResultsFromAnotherServerOrEdition() {
+		Path file = tempDir.resolve("terminology.bin");
+		TerminologyDiskStore store = load(file, SERVER_URL);
+		store.updateVersion(VERSION);
+		store.putLookup("http://snomed.info/sct|408051007", new ConceptParameters("408051007", "Ramipril 5 mg oral tablet", null, VERSION));
+		store.close();
+
+		load(file, "http://otherhost/fhir").close();
+		assertTrue(lookups.isEmpty());
+
+		store = load(file, "http://otherhost/fhir");
+		store.updateVersion(VERSION);
+		store.putLookup("http://snomed.info/sct|408051007", new ConceptParameters("408051007", "Ramipril 5 mg oral tablet", null, VERSION));
+		assertTrue(store.updateVersion("http://snomed.info/sct|http://snomed.info/sct/900000000000207008/version/20230731"));
+		store.close();
+
+		load(file, "http://otherhost/fhir");
+		assertTrue(lookups.isEmpty());
+	}
+
+	@Test
+	void shouldKeepResultsWrittenBeforeFirstVersion() {
+		Path file = tempDir.resolve("terminology.bin");
+		TerminologyDiskStore store = load(file, SERVER_URL);
+		store.putLookup("http://snomed.info/sct|408051007", new ConceptParameters("408051007", "Ramipril 5 mg oral tablet", null, null));
+		assertFalse(store.updateVersion(VERSION));
+		assertFalse(store.updateVersion(VERSION));
+		store.putLookup("http://snomed.info/sct|322236009", new ConceptParameters("322236009", "Acetaminophen 500 mg oral tablet", null, VERSION));
+		store.close();
+
+		load(file, SERVER_URL);
+
+		assertEquals(2, lookups.size());
+		assertEquals("Ramipril 5 mg oral tablet", lookups.get("http://snomed.info/sct|408051007").getDisplay());
+	}
+
+	@Test
+	void shouldWriteResultsPutFromManyThreadsBeforeClosing() throws InterruptedException {
+		Path file = tempDir.resolve("terminology.bin");
+		TerminologyDiskStore store = load(file, SERVER_URL);
+		store.updateVersion(VERSION);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int t = 0; t < 8; t++) {
+			int thread = t;
+			executor.execute(() -> {
+				for (int i = 0; i < 100; i++) {
+					String code = thread + "-" + i;
+					store.putLookup(code, new ConceptParameters(code, "Concept " + code, null, VERSION));
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		store.close();
+
+		load(file, SERVER_URL);
+
+		assertEquals(800, lookups.size());
+		assertEquals("Concept 7-99", lookups.get("7-99").getDisplay());
+	}
+
+	@Test
+	void shouldDropRecordCutShort() throws IOException {
+		Path file = tempDir.resolve("terminology.bin");
+		TerminologyDiskStore store = load(file, SERVER_URL);
+		store.putLookup("a", new ConceptParameters("a", "A", null, null));
+		store.putLookup("b", new ConceptParameters("b", "B", null, null));
+		store.close();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3);
+		}
+
+		store = load(file, SERVER_URL);
+		assertEquals("A", lookups.get("a").getDisplay());
+		assertFalse(lookups.containsKey("b"));
+
+		// Appends after the last complete record
+		store.putLookup("c", new ConceptParameters("c", "C", null, null));
+		store.close();
+		load(file, SERVER_URL);
+		assertEquals("C", lookups.get("c").getDisplay());
+	}
+
+	private TerminologyDiskStore load(Path file, String serverUrl) {
+		lookups.clear();
+		expansions.clear();
+		TerminologyDiskStore store = new TerminologyDiskStore(file, serverUrl, Duration.ofDays(1));
+		store.load(new TerminologyDiskStore.Listener() {
+			@Override
+			public void lookup(String key, ConceptParameters conceptParameters, Duration age) {
+				lookups.put(key, conceptParameters);
+			}
+
+			@Override
+			public void expansion(String key, CodeSet codes, Duration age) {
+				expansions.put(key, codes);
+			}
+		});
+		return store;
+	}
+}